@@ -7,6 +7,8 @@ import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
 
+import com.roomorama.caldroid.MonthPage;
+
 import java.util.ArrayList;
 
 import hirondelle.date4j.DateTime;
@@ -22,9 +24,9 @@ public class InfiniteViewPager extends ViewPager {
 	public static final int OFFSET = 1000;
 
 	/**
-	 * datesInMonth is required to calculate the height correctly
+	 * monthPage is required to calculate the height correctly
 	 */
-	private ArrayList<DateTime> datesInMonth;
+	private MonthPage monthPage;
 
 	/**
 	 * Enable swipe
@@ -55,12 +57,20 @@ public class InfiniteViewPager extends ViewPager {
 		return sixWeeksInCalendar;
 	}
 
-	public ArrayList<DateTime> getDatesInMonth() {
-		return datesInMonth;
+	public MonthPage getMonthPage() {
+		return monthPage;
+	}
+
+	public void setMonthPage(MonthPage monthPage) {
+		this.monthPage = monthPage;
 	}
 
-	public void setDatesInMonth(ArrayList<DateTime> datesInMonth) {
-		this.datesInMonth = datesInMonth;
+	/**
+	 * @deprecated use {@link #getMonthPage()}, which does not create DateTime
+	 */
+	@Deprecated
+	public ArrayList<DateTime> getDatesInMonth() {
+		return monthPage == null ? null : monthPage.toDateTimeList();
 	}
 
 	public void setSixWeeksInCalendar(boolean sixWeeksInCalendar) {
@@ -115,7 +125,7 @@ public class InfiniteViewPager extends ViewPager {
 		super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 
 		// Calculate row height
-		int rows = datesInMonth.size() / 7;
+		int rows = monthPage.getRowCount();
 
 		if (getChildCount() > 0 && rowHeight == 0) {
 			View firstChild = getChildAt(0);
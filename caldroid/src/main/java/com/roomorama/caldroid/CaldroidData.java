@@ -0,0 +1,488 @@
+package com.roomorama.caldroid;
+
+import android.graphics.drawable.Drawable;
+
+import com.caldroid.R;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import hirondelle.date4j.DateTime;
+
+/**
+ * CaldroidData is an immutable snapshot of the parameters of Caldroid that
+ * the date grid adapters need. CaldroidFragment publishes a new snapshot only
+ * when a parameter changes, and shares it by reference with all adapters.
+ * Parts that did not change are shared with the previous snapshot.
+ * <p/>
+ * Disabled and selected dates are stored as DateBitSet copies, the lists of
+ * DateTime are only created when a client asks for them. Decoration maps and
+ * date decorations are copied too, only when they changed, so a snapshot
+ * never sees later changes of the fragment. Nothing returned by a snapshot
+ * must be modified.
+ */
+public final class CaldroidData {
+    private final DateConstraints dateConstraints;
+    private final DateBitSet selectedDateSet;
+    private ArrayList<DateTime> disableDates;
+    private ArrayList<DateTime> selectedDates;
+    private final DateTime minDateTime;
+    private final DateTime maxDateTime;
+    private final int startDayOfWeek;
+    private final boolean sixWeeksInCalendar;
+    private final boolean squareTextViewCell;
+    private final int themeResource;
+    private final Map<DateTime, Drawable> backgroundForDateTimeMap;
+    private final Map<DateTime, Integer> textColorForDateTimeMap;
+    private final DateDecorations dateDecorations;
+
+    /**
+     * Version of each group of parameters, increased when the group changes.
+     * Indexed by the bit position of CaldroidFragment.CHANGED_* flags
+     */
+    private final int[] versions;
+
+    /**
+     * Shared by a snapshot and all the snapshots created from it. Versions
+     * can only be compared between snapshots of the same lineage
+     */
+    private final Object lineage;
+
+    /**
+     * Compatibility view for clients that still read caldroidData as a map
+     */
+    private Map<String, Object> map;
+
+    /**
+     * Create a snapshot from the parameters. Parts not flagged in changes
+     * are taken from previous snapshot
+     *
+     * @param previous previous snapshot, can be null
+     * @param changes  combination of CaldroidFragment.CHANGED_* flags
+     */
+    CaldroidData(CaldroidData previous, int changes,
+                 DateBitSet disableDateSet,
+                 List<DateRule> disableDateRules,
+                 DateBitSet selectedDateSet,
+                 DateTime minDateTime, DateTime maxDateTime,
+                 int startDayOfWeek, boolean sixWeeksInCalendar,
+                 boolean squareTextViewCell, int themeResource,
+                 Map<DateTime, Drawable> backgroundForDateTimeMap,
+                 Map<DateTime, Integer> textColorForDateTimeMap,
+                 DateDecorations dateDecorations) {
+        if (previous == null) {
+            changes = CaldroidFragment.CHANGED_ALL;
+        }
+
+        // Copy the sets that changed, fragment keeps modifying its own
+        if ((changes & CaldroidFragment.CHANGED_DISABLE_DATES) != 0) {
+            dateConstraints = new DateConstraints(
+                    getEpochDay(minDateTime, Integer.MIN_VALUE),
+                    getEpochDay(maxDateTime, Integer.MAX_VALUE),
+                    new DateBitSet(disableDateSet), disableDateRules);
+        } else {
+            this.disableDates = previous.disableDates;
+            if ((changes & CaldroidFragment.CHANGED_MIN_MAX_DATES) != 0) {
+                DateConstraints previousConstraints = previous.dateConstraints;
+                dateConstraints = new DateConstraints(
+                        getEpochDay(minDateTime, Integer.MIN_VALUE),
+                        getEpochDay(maxDateTime, Integer.MAX_VALUE),
+                        previousConstraints.getDisableDateSet(),
+                        previousConstraints.getDisableDateRules());
+            } else {
+                dateConstraints = previous.dateConstraints;
+            }
+        }
+
+        if ((changes & CaldroidFragment.CHANGED_SELECTED_DATES) != 0) {
+            this.selectedDateSet = new DateBitSet(selectedDateSet);
+        } else {
+            this.selectedDateSet = previous.selectedDateSet;
+            this.selectedDates = previous.selectedDates;
+        }
+
+        this.minDateTime = minDateTime;
+        this.maxDateTime = maxDateTime;
+
+        this.startDayOfWeek = startDayOfWeek;
+        this.sixWeeksInCalendar = sixWeeksInCalendar;
+        this.squareTextViewCell = squareTextViewCell;
+        this.themeResource = themeResource;
+
+        // Decorations are copied, fragment keeps modifying its own
+        if ((changes & CaldroidFragment.CHANGED_DECORATIONS) != 0) {
+            this.backgroundForDateTimeMap = backgroundForDateTimeMap == null ? null
+                    : new HashMap<DateTime, Drawable>(backgroundForDateTimeMap);
+            this.textColorForDateTimeMap = textColorForDateTimeMap == null ? null
+                    : new HashMap<DateTime, Integer>(textColorForDateTimeMap);
+            this.dateDecorations = dateDecorations == null ? new DateDecorations()
+                    : new DateDecorations(dateDecorations);
+        } else {
+            this.backgroundForDateTimeMap = previous.backgroundForDateTimeMap;
+            this.textColorForDateTimeMap = previous.textColorForDateTimeMap;
+            this.dateDecorations = previous.dateDecorations;
+        }
+
+        lineage = previous == null ? new Object() : previous.lineage;
+        versions = new int[Integer.bitCount(CaldroidFragment.CHANGED_ALL)];
+        for (int i = 0; i < versions.length; i++) {
+            if (previous != null) {
+                versions[i] = previous.versions[i];
+            }
+            if ((changes & (1 << i)) != 0) {
+                versions[i]++;
+            }
+        }
+    }
+
+    private static int getEpochDay(DateTime dateTime, int defaultEpochDay) {
+        return dateTime == null ? defaultEpochDay
+                : CalendarHelper.convertDateTimeToEpochDay(dateTime);
+    }
+
+    /**
+     * Create a snapshot from a caldroidData map. If the map is the
+     * compatibility view of a snapshot, the snapshot itself is returned
+     *
+     * @param caldroidData
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static CaldroidData fromMap(Map<String, Object> caldroidData) {
+        if (caldroidData instanceof MapView) {
+            return ((MapView) caldroidData).data;
+        }
+
+        Integer themeResource = (Integer) caldroidData
+                .get(CaldroidFragment.THEME_RESOURCE);
+        return new CaldroidData(null, CaldroidFragment.CHANGED_ALL,
+                DateBitSet.fromDateTimes((ArrayList<DateTime>) caldroidData
+                        .get(CaldroidFragment.DISABLE_DATES)),
+                (List<DateRule>) caldroidData.get(CaldroidFragment._DISABLE_DATE_RULES),
+                DateBitSet.fromDateTimes((ArrayList<DateTime>) caldroidData
+                        .get(CaldroidFragment.SELECTED_DATES)),
+                (DateTime) caldroidData.get(CaldroidFragment._MIN_DATE_TIME),
+                (DateTime) caldroidData.get(CaldroidFragment._MAX_DATE_TIME),
+                (Integer) caldroidData.get(CaldroidFragment.START_DAY_OF_WEEK),
+                (Boolean) caldroidData.get(CaldroidFragment.SIX_WEEKS_IN_CALENDAR),
+                (Boolean) caldroidData.get(CaldroidFragment.SQUARE_TEXT_VIEW_CELL),
+                themeResource == null ? R.style.CaldroidDefault : themeResource,
+                (Map<DateTime, Drawable>) caldroidData.get(CaldroidFragment._BACKGROUND_FOR_DATETIME_MAP),
+                (Map<DateTime, Integer>) caldroidData.get(CaldroidFragment._TEXT_COLOR_FOR_DATETIME_MAP),
+                (DateDecorations) caldroidData.get(CaldroidFragment._DATE_DECORATIONS));
+    }
+
+    /**
+     * Get the parameters that differ between this snapshot and other
+     *
+     * @param other
+     * @return combination of CaldroidFragment.CHANGED_* flags
+     */
+    public int getChanges(CaldroidData other) {
+        if (other == this) {
+            return 0;
+        }
+        // Snapshots created separately, e.g. by fromMap(), can have the same
+        // versions with different parameters
+        if (other == null || other.lineage != lineage) {
+            return CaldroidFragment.CHANGED_ALL;
+        }
+
+        int changes = 0;
+        for (int i = 0; i < versions.length; i++) {
+            if (versions[i] != other.versions[i]) {
+                changes |= 1 << i;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Compute the state of every cell of the page, as a combination of
+     * CaldroidGridAdapter.CELL_* flags. Does not touch any view, so it is
+     * safe to call from any thread
+     *
+     * @param monthPage
+     * @param todayEpochDay
+     * @return
+     */
+    public byte[] computeCellStates(MonthPage monthPage, int todayEpochDay) {
+        int size = monthPage.size();
+        byte[] cellStates = new byte[size];
+
+        // Disabled and selected dates only need to be checked if the page
+        // can have some
+        boolean hasDisableDates = dateConstraints.mayDisable(
+                monthPage.getFirstEpochDay(), monthPage.getLastEpochDay());
+        boolean hasSelectedDates = selectedDateSet.intersects(
+                monthPage.getFirstEpochDay(), monthPage.getLastEpochDay());
+
+        // Lookups by DateTime are only needed when there is something to
+        // look up
+        boolean hasDateTimeLookup = (backgroundForDateTimeMap != null && !backgroundForDateTimeMap.isEmpty())
+                || (textColorForDateTimeMap != null && !textColorForDateTimeMap.isEmpty());
+        // Provider of decorations is asked once per page
+        int[] pageStyles = dateDecorations.getPageStyles(monthPage);
+
+        for (int position = 0; position < size; position++) {
+            int epochDay = monthPage.getEpochDay(position);
+            int state = 0;
+
+            if (epochDay == todayEpochDay) {
+                state |= CaldroidGridAdapter.CELL_TODAY;
+            }
+
+            if (!monthPage.isInMonth(position)) {
+                state |= CaldroidGridAdapter.CELL_PREV_NEXT_MONTH;
+            }
+
+            if (dateConstraints.isOutOfRange(epochDay)) {
+                state |= CaldroidGridAdapter.CELL_OUT_OF_RANGE;
+            }
+
+            if (hasDisableDates && dateConstraints.isDisabled(epochDay)) {
+                state |= CaldroidGridAdapter.CELL_DISABLED;
+            }
+
+            if (hasSelectedDates && selectedDateSet.contains(epochDay)) {
+                state |= CaldroidGridAdapter.CELL_SELECTED;
+            }
+
+            if (pageStyles != null && pageStyles[position] != DateDecorations.NO_STYLE) {
+                state |= CaldroidGridAdapter.CELL_DECORATED;
+            } else if (hasDateTimeLookup) {
+                DateTime dateTime = monthPage.getDateTime(position);
+
+                if ((backgroundForDateTimeMap != null && backgroundForDateTimeMap.containsKey(dateTime))
+                        || (textColorForDateTimeMap != null && textColorForDateTimeMap.containsKey(dateTime))) {
+                    state |= CaldroidGridAdapter.CELL_DECORATED;
+                }
+            }
+
+            cellStates[position] = (byte) state;
+        }
+
+        return cellStates;
+    }
+
+    /**
+     * Map view of this snapshot, for subclasses that still read
+     * caldroidData by key
+     *
+     * @return
+     */
+    public Map<String, Object> toMap() {
+        if (map == null) {
+            map = new MapView(this);
+        }
+        return map;
+    }
+
+    /**
+     * Dates the user can pick, used both to draw the cells and to accept
+     * clicks
+     *
+     * @return
+     */
+    public DateConstraints getDateConstraints() {
+        return dateConstraints;
+    }
+
+    /**
+     * Disabled dates. Must not be modified
+     *
+     * @return
+     */
+    public DateBitSet getDisableDateSet() {
+        return dateConstraints.getDisableDateSet();
+    }
+
+    /**
+     * Selected dates. Must not be modified
+     *
+     * @return
+     */
+    public DateBitSet getSelectedDateSet() {
+        return selectedDateSet;
+    }
+
+    /**
+     * Rules of disabled dates. Can not be modified
+     *
+     * @return
+     */
+    public List<DateRule> getDisableDateRules() {
+        return dateConstraints.getDisableDateRules();
+    }
+
+    /**
+     * Check if a date is disabled, by date or by rule
+     *
+     * @param epochDay
+     * @return
+     */
+    public boolean isDisabled(int epochDay) {
+        return dateConstraints.isDisabled(epochDay);
+    }
+
+    public boolean isSelected(int epochDay) {
+        return selectedDateSet.contains(epochDay);
+    }
+
+    /**
+     * List of all disabled dates, created on first call. Prefer
+     * getDisableDateSet(), the list has one entry per day
+     *
+     * @return
+     */
+    public ArrayList<DateTime> getDisableDates() {
+        if (disableDates == null) {
+            disableDates = dateConstraints.getDisableDateSet().toDateTimeList();
+        }
+        return disableDates;
+    }
+
+    /**
+     * List of all selected dates, created on first call. Prefer
+     * getSelectedDateSet(), the list has one entry per day
+     *
+     * @return
+     */
+    public ArrayList<DateTime> getSelectedDates() {
+        if (selectedDates == null) {
+            selectedDates = selectedDateSet.toDateTimeList();
+        }
+        return selectedDates;
+    }
+
+    public DateTime getMinDateTime() {
+        return minDateTime;
+    }
+
+    public DateTime getMaxDateTime() {
+        return maxDateTime;
+    }
+
+    /**
+     * @return epoch day of min date, Integer.MIN_VALUE if there is no min date
+     */
+    public int getMinEpochDay() {
+        return dateConstraints.getMinEpochDay();
+    }
+
+    /**
+     * @return epoch day of max date, Integer.MAX_VALUE if there is no max date
+     */
+    public int getMaxEpochDay() {
+        return dateConstraints.getMaxEpochDay();
+    }
+
+    public int getStartDayOfWeek() {
+        return startDayOfWeek;
+    }
+
+    public boolean isSixWeeksInCalendar() {
+        return sixWeeksInCalendar;
+    }
+
+    public boolean isSquareTextViewCell() {
+        return squareTextViewCell;
+    }
+
+    public int getThemeResource() {
+        return themeResource;
+    }
+
+    public Map<DateTime, Drawable> getBackgroundForDateTimeMap() {
+        return backgroundForDateTimeMap;
+    }
+
+    public Map<DateTime, Integer> getTextColorForDateTimeMap() {
+        return textColorForDateTimeMap;
+    }
+
+    /**
+     * Palette and style of the decorated dates. Copy owned by this snapshot,
+     * must not be modified
+     *
+     * @return
+     */
+    public DateDecorations getDateDecorations() {
+        return dateDecorations;
+    }
+
+    /**
+     * Map of the snapshot, keyed by CaldroidFragment constants. Modifying
+     * the map does not change the snapshot. The lists of disabled and
+     * selected dates are only created when the map values are read
+     */
+    private static class MapView extends HashMap<String, Object> {
+        private static final long serialVersionUID = 1L;
+
+        private final CaldroidData data;
+        private boolean hasDates;
+
+        MapView(CaldroidData data) {
+            this.data = data;
+            put(CaldroidFragment.DISABLE_DATES, null);
+            put(CaldroidFragment.SELECTED_DATES, null);
+            put(CaldroidFragment._DISABLE_DATE_RULES, data.getDisableDateRules());
+            put(CaldroidFragment._MIN_DATE_TIME, data.minDateTime);
+            put(CaldroidFragment._MAX_DATE_TIME, data.maxDateTime);
+            put(CaldroidFragment.START_DAY_OF_WEEK, data.startDayOfWeek);
+            put(CaldroidFragment.SIX_WEEKS_IN_CALENDAR, data.sixWeeksInCalendar);
+            put(CaldroidFragment.SQUARE_TEXT_VIEW_CELL, data.squareTextViewCell);
+            put(CaldroidFragment.THEME_RESOURCE, data.themeResource);
+            put(CaldroidFragment._BACKGROUND_FOR_DATETIME_MAP,
+                    data.backgroundForDateTimeMap);
+            put(CaldroidFragment._TEXT_COLOR_FOR_DATETIME_MAP,
+                    data.textColorForDateTimeMap);
+            put(CaldroidFragment._DATE_DECORATIONS, data.dateDecorations);
+        }
+
+        private void ensureDates() {
+            if (!hasDates) {
+                hasDates = true;
+                if (containsKey(CaldroidFragment.DISABLE_DATES)
+                        && super.get(CaldroidFragment.DISABLE_DATES) == null) {
+                    put(CaldroidFragment.DISABLE_DATES, data.getDisableDates());
+                }
+                if (containsKey(CaldroidFragment.SELECTED_DATES)
+                        && super.get(CaldroidFragment.SELECTED_DATES) == null) {
+                    put(CaldroidFragment.SELECTED_DATES, data.getSelectedDates());
+                }
+            }
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (CaldroidFragment.DISABLE_DATES.equals(key)
+                    || CaldroidFragment.SELECTED_DATES.equals(key)) {
+                ensureDates();
+            }
+            return super.get(key);
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            ensureDates();
+            return super.containsValue(value);
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            ensureDates();
+            return super.entrySet();
+        }
+
+        @Override
+        public Collection<Object> values() {
+            ensureDates();
+            return super.values();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.roomorama.caldroid;
+
+import java.util.Date;
+
+import hirondelle.date4j.DateTime;
+
+/**
+ * CaldroidDate works with dates stored as a plain int, the number of days
+ * since 1970-01-01 (epoch day). Like android.graphics.Color for colors, it only
+ * has static methods, so dates can be passed to the int overloads of
+ * CaldroidFragment and received in the int callbacks of CaldroidListener
+ * without creating any Date or DateTime.
+ * <p/>
+ * Epoch days are not packed dates: use {@link #fromPackedDate(int)} to convert
+ * a yyyymmdd int such as 20150701.
+ */
+public final class CaldroidDate {
+
+    private CaldroidDate() {
+    }
+
+    /**
+     * @param year
+     * @param month 1 to 12
+     * @param day   1 to 31
+     * @return epoch day of the date
+     */
+    public static int of(int year, int month, int day) {
+        return CalendarHelper.getEpochDay(year, month, day);
+    }
+
+    /**
+     * @param packedDate date as yyyymmdd, e.g. 20150701
+     * @return epoch day of the date
+     */
+    public static int fromPackedDate(int packedDate) {
+        return CalendarHelper.getEpochDay(packedDate / 10000,
+                packedDate / 100 % 100, packedDate % 100);
+    }
+
+    /**
+     * @param epochDay
+     * @return date as yyyymmdd, e.g. 20150701
+     */
+    public static int toPackedDate(int epochDay) {
+        return CalendarHelper.convertEpochDayToPackedDate(epochDay);
+    }
+
+    public static int getYear(int epochDay) {
+        return toPackedDate(epochDay) / 10000;
+    }
+
+    /**
+     * @param epochDay
+     * @return 1 to 12
+     */
+    public static int getMonth(int epochDay) {
+        return toPackedDate(epochDay) / 100 % 100;
+    }
+
+    /**
+     * @param epochDay
+     * @return 1 to 31
+     */
+    public static int getDay(int epochDay) {
+        return toPackedDate(epochDay) % 100;
+    }
+
+    /**
+     * @param epochDay
+     * @return CaldroidFragment.SUNDAY to CaldroidFragment.SATURDAY
+     */
+    public static int getWeekDay(int epochDay) {
+        return CalendarHelper.getWeekDayOfEpochDay(epochDay);
+    }
+
+    /**
+     * @return epoch day of today, in the default time zone
+     */
+    public static int today() {
+        return CalendarHelper.convertDateToEpochDay(new Date());
+    }
+
+    /**
+     * @param date
+     * @return epoch day of the date, in the default time zone
+     */
+    public static int fromDate(Date date) {
+        return CalendarHelper.convertDateToEpochDay(date);
+    }
+
+    /**
+     * @param epochDay
+     * @return start of the day, in the default time zone
+     */
+    public static Date toDate(int epochDay) {
+        return CalendarHelper.convertEpochDayToDate(epochDay);
+    }
+
+    public static int fromDateTime(DateTime dateTime) {
+        return CalendarHelper.convertDateTimeToEpochDay(dateTime);
+    }
+
+    public static DateTime toDateTime(int epochDay) {
+        return CalendarHelper.convertEpochDayToDateTime(epochDay);
+    }
+
+    /**
+     * @param epochDay
+     * @return the date as yyyy-MM-dd
+     */
+    public static String toString(int epochDay) {
+        int packedDate = toPackedDate(epochDay);
+        int year = packedDate / 10000;
+        int month = packedDate / 100 % 100;
+        int day = packedDate % 100;
+
+        StringBuilder builder = new StringBuilder(10);
+        if (year >= 0 && year < 1000) {
+            builder.append(year < 10 ? "000" : year < 100 ? "00" : "0");
+        }
+        builder.append(year).append(month < 10 ? "-0" : "-").append(month)
+                .append(day < 10 ? "-0" : "-").append(day);
+        return builder.toString();
+    }
+}
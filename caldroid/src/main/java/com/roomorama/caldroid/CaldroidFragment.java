@@ -2,7 +2,10 @@ package com.roomorama.caldroid;
 
 import android.annotation.SuppressLint;
 import android.app.Dialog;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.res.Configuration;
 import android.graphics.Color;
 import android.graphics.drawable.Drawable;
@@ -11,10 +14,12 @@ import android.support.annotation.Nullable;
 import android.support.v4.app.DialogFragment;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
+import android.support.v4.view.PagerAdapter;
 import android.support.v4.view.ViewPager.OnPageChangeListener;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.text.format.DateUtils;
 import android.text.format.Time;
-import android.view.ContextThemeWrapper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -127,6 +132,11 @@ public class CaldroidFragment extends DialogFragment {
     private InfiniteViewPager dateViewPager;
     private DatePageChangeListener pageChangeListener;
     private ArrayList<DateGridFragment> fragments;
+    private RecyclerView monthRecyclerView;
+    private LinearLayoutManager monthLayoutManager;
+    private MonthListAdapter monthListAdapter;
+    private MonthPrefetcher monthPrefetcher;
+    private int prefetchDirection = 1;
 
     private int themeResource = R.style.CaldroidDefault;
 
@@ -140,6 +150,8 @@ public class CaldroidFragment extends DialogFragment {
             SHOW_NAVIGATION_ARROWS = "showNavigationArrows",
             DISABLE_DATES = "disableDates",
             SELECTED_DATES = "selectedDates",
+            DISABLE_DATE_RANGES = "disableDateRanges",
+            SELECTED_DATE_RANGES = "selectedDateRanges",
             MIN_DATE = "minDate",
             MAX_DATE = "maxDate",
             ENABLE_SWIPE = "enableSwipe",
@@ -147,7 +159,11 @@ public class CaldroidFragment extends DialogFragment {
             SIX_WEEKS_IN_CALENDAR = "sixWeeksInCalendar",
             ENABLE_CLICK_ON_DISABLED_DATES = "enableClickOnDisabledDates",
             SQUARE_TEXT_VIEW_CELL = "squareTextViewCell",
-            THEME_RESOURCE = "themeResource";
+            THEME_RESOURCE = "themeResource",
+            CANVAS_MONTH_VIEW = "canvasMonthView",
+            VERTICAL_SCROLL = "verticalScroll",
+            VIEW_BASED_PAGES = "viewBasedPages",
+            PREFETCH_MONTHS = "prefetchMonths";
 
     /**
      * For internal use
@@ -156,7 +172,23 @@ public class CaldroidFragment extends DialogFragment {
             _MIN_DATE_TIME = "_minDateTime",
             _MAX_DATE_TIME = "_maxDateTime",
             _BACKGROUND_FOR_DATETIME_MAP = "_backgroundForDateTimeMap",
-            _TEXT_COLOR_FOR_DATETIME_MAP = "_textColorForDateTimeMap";
+            _TEXT_COLOR_FOR_DATETIME_MAP = "_textColorForDateTimeMap",
+            _DATE_DECORATIONS = "_dateDecorations",
+            _DISABLE_DATE_RULES = "_disableDateRules",
+            _RETAINED_STATE = "_retainedState";
+
+    /**
+     * Flags to track which parameters have changed since the last
+     * refreshView(), so only the affected data is rebuilt
+     */
+    public final static int
+            CHANGED_SELECTED_DATES = 1,
+            CHANGED_DISABLE_DATES = 1 << 1,
+            CHANGED_MIN_MAX_DATES = 1 << 2,
+            CHANGED_THEME = 1 << 3,
+            CHANGED_LAYOUT = 1 << 4,
+            CHANGED_DECORATIONS = 1 << 5,
+            CHANGED_ALL = (1 << 6) - 1;
 
     /**
      * Initial data
@@ -164,17 +196,27 @@ public class CaldroidFragment extends DialogFragment {
     protected String dialogTitle;
     protected int month = -1;
     protected int year = -1;
-    protected ArrayList<DateTime> disableDates = new ArrayList<DateTime>();
-    protected ArrayList<DateTime> selectedDates = new ArrayList<DateTime>();
+    protected DateBitSet disableDateSet = new DateBitSet();
+    protected ArrayList<DateRule> disableDateRules = new ArrayList<DateRule>();
+    protected DateBitSet selectedDateSet = new DateBitSet();
     protected DateTime minDateTime;
     protected DateTime maxDateTime;
-    protected ArrayList<DateTime> dateInMonthsList;
+
+    /**
+     * All dates displayed in the current month page
+     */
+    protected MonthPage currentMonthPage;
 
     /**
      * caldroidData belongs to Caldroid
      */
     protected Map<String, Object> caldroidData = new HashMap<>();
 
+    /**
+     * Latest published snapshot of caldroidData, shared with all adapters
+     */
+    private CaldroidData caldroidDataSnapshot;
+
     /**
      * extraData belongs to client
      */
@@ -189,7 +231,12 @@ public class CaldroidFragment extends DialogFragment {
      * textColorForDateMap holds color for text for each date
      */
     protected Map<DateTime, Integer> textColorForDateTimeMap = new HashMap<>();
-    ;
+
+    /**
+     * dateDecorations holds the palette of decoration styles and the style
+     * of each decorated date
+     */
+    protected DateDecorations dateDecorations = new DateDecorations();
 
     /**
      * First column of calendar is Sunday
@@ -220,6 +267,30 @@ public class CaldroidFragment extends DialogFragment {
      */
     protected boolean squareTextViewCell;
 
+    /**
+     * To draw each month with a single MonthView instead of a GridView of
+     * CellViews. Custom adapters that provide their own cell views are not
+     * used by MonthView
+     */
+    protected boolean canvasMonthView;
+
+    /**
+     * To show months in a vertically scrolling list instead of a pager
+     */
+    protected boolean verticalScroll;
+
+    /**
+     * To add the page views of the pager directly, without attaching the
+     * DateGridFragments to the child FragmentManager
+     */
+    protected boolean viewBasedPages;
+
+    /**
+     * Number of months before and after the current month to compute in
+     * background. 0 to compute months on the UI thread when they are shown
+     */
+    protected int prefetchMonths;
+
     /**
      * dateItemClickListener is fired when user click on the date cell
      */
@@ -231,12 +302,48 @@ public class CaldroidFragment extends DialogFragment {
      */
     private OnItemLongClickListener dateItemLongClickListener;
 
+    /**
+     * dateCellClickListener is fired when user clicks or long clicks on a
+     * date cell drawn by MonthView
+     */
+    private MonthView.OnCellClickListener dateCellClickListener;
+
+    /**
+     * Invalidates cached time zone of CalendarHelper, registered while the
+     * fragment is started
+     */
+    private BroadcastReceiver timeZoneChangedReceiver;
+
+    /**
+     * Arguments whose dates are loaded, see retrieveInitialArgs()
+     */
+    private Bundle loadedArguments;
+
+    /**
+     * Token of the state last kept in RetainedCaldroidStates by
+     * getSavedStates(), 0 if none
+     */
+    private long retainedStateToken;
+
+    /**
+     * Data taken from RetainedCaldroidStates in onCreate() for
+     * retainedArguments, adopted when the view is created
+     */
+    private CaldroidData retainedData;
+    private Bundle retainedArguments;
+
     /**
      * caldroidListener inform library client of the event happens inside
      * Caldroid
      */
     private CaldroidListener caldroidListener;
 
+    /**
+     * Parameters changed since the last published caldroidDataSnapshot,
+     * combination of CHANGED_* flags
+     */
+    private int changes = CHANGED_ALL;
+
     /**
      * Retrieve current month
      * @return
@@ -263,7 +370,7 @@ public class CaldroidFragment extends DialogFragment {
      */
     public CaldroidGridAdapter getNewDatesGridAdapter(int month, int year) {
         return new CaldroidGridAdapter(getActivity(), month, year,
-                getCaldroidData(), extraData);
+                getCaldroidDataSnapshot(), extraData);
     }
 
     /**
@@ -286,7 +393,8 @@ public class CaldroidFragment extends DialogFragment {
     }
 
     /**
-     * For client to access array of rotating fragments
+     * For client to access array of rotating fragments. Not available in
+     * vertical scroll mode
      */
     public ArrayList<DateGridFragment> getFragments() {
         return fragments;
@@ -301,15 +409,42 @@ public class CaldroidFragment extends DialogFragment {
         return dateViewPager;
     }
 
+    /**
+     * For client wants to access the month list, only available in vertical
+     * scroll mode
+     *
+     * @return
+     */
+    public RecyclerView getMonthRecyclerView() {
+        return monthRecyclerView;
+    }
+
+    public MonthListAdapter getMonthListAdapter() {
+        return monthListAdapter;
+    }
+
+    /**
+     * Prefetcher of the adapters, null if PREFETCH_MONTHS is 0
+     *
+     * @return
+     */
+    public MonthPrefetcher getMonthPrefetcher() {
+        return monthPrefetcher;
+    }
+
 
     /*
      * For client to access background and text color maps
      */
     public Map<DateTime, Drawable> getBackgroundForDateTimeMap() {
+        // Client may modify the map
+        markChanged(CHANGED_DECORATIONS);
         return backgroundForDateTimeMap;
     }
 
     public Map<DateTime, Integer> getTextColorForDateTimeMap() {
+        // Client may modify the map
+        markChanged(CHANGED_DECORATIONS);
         return textColorForDateTimeMap;
     }
 
@@ -346,28 +481,34 @@ public class CaldroidFragment extends DialogFragment {
     }
 
     /**
-     * caldroidData return data belong to Caldroid
+     * caldroidData return data belong to Caldroid, as a map. Prefer
+     * {@link #getCaldroidDataSnapshot()}, which does not need casting
      *
      * @return
      */
     public Map<String, Object> getCaldroidData() {
-        caldroidData.clear();
-        caldroidData.put(DISABLE_DATES, disableDates);
-        caldroidData.put(SELECTED_DATES, selectedDates);
-        caldroidData.put(_MIN_DATE_TIME, minDateTime);
-        caldroidData.put(_MAX_DATE_TIME, maxDateTime);
-        caldroidData.put(START_DAY_OF_WEEK, startDayOfWeek);
-        caldroidData.put(SIX_WEEKS_IN_CALENDAR, sixWeeksInCalendar);
-        caldroidData.put(SQUARE_TEXT_VIEW_CELL, squareTextViewCell);
-        caldroidData.put(THEME_RESOURCE, themeResource);
-
-
-        // For internal use
-        caldroidData
-                .put(_BACKGROUND_FOR_DATETIME_MAP, backgroundForDateTimeMap);
-        caldroidData.put(_TEXT_COLOR_FOR_DATETIME_MAP, textColorForDateTimeMap);
+        return getCaldroidDataSnapshot().toMap();
+    }
 
-        return caldroidData;
+    /**
+     * Return the snapshot of data belong to Caldroid. A new snapshot is only
+     * created when parameters have changed since the last call, otherwise
+     * the same instance is returned
+     *
+     * @return
+     */
+    public CaldroidData getCaldroidDataSnapshot() {
+        if (caldroidDataSnapshot == null || changes != 0) {
+            caldroidDataSnapshot = new CaldroidData(caldroidDataSnapshot,
+                    changes, disableDateSet, disableDateRules, selectedDateSet, minDateTime,
+                    maxDateTime, startDayOfWeek, sixWeeksInCalendar,
+                    squareTextViewCell, themeResource,
+                    backgroundForDateTimeMap, textColorForDateTimeMap,
+                    dateDecorations);
+            caldroidData = caldroidDataSnapshot.toMap();
+            changes = 0;
+        }
+        return caldroidDataSnapshot;
     }
 
     /**
@@ -388,6 +529,18 @@ public class CaldroidFragment extends DialogFragment {
         this.extraData = extraData;
     }
 
+    /**
+     * Flag parameters as changed, so they are rebuilt on next refreshView().
+     * All setters of Caldroid already do this. Subclasses that modify the
+     * protected fields directly need to call this method before
+     * refreshView()
+     *
+     * @param changes combination of CHANGED_* flags
+     */
+    public void markChanged(int changes) {
+        this.changes |= changes;
+    }
+
     /**
      * Set backgroundForDateMap
      */
@@ -404,6 +557,7 @@ public class CaldroidFragment extends DialogFragment {
             DateTime dateTime = CalendarHelper.convertDateToDateTime(date);
             backgroundForDateTimeMap.put(dateTime, drawable);
         }
+        markChanged(CHANGED_DECORATIONS);
     }
 
     public void clearBackgroundDrawableForDates(List<Date> dates) {
@@ -419,6 +573,7 @@ public class CaldroidFragment extends DialogFragment {
     public void setBackgroundDrawableForDateTimes(
             Map<DateTime, Drawable> backgroundForDateTimeMap) {
         this.backgroundForDateTimeMap.putAll(backgroundForDateTimeMap);
+        markChanged(CHANGED_DECORATIONS);
     }
 
     public void clearBackgroundDrawableForDateTimes(List<DateTime> dateTimes) {
@@ -427,25 +582,30 @@ public class CaldroidFragment extends DialogFragment {
         for (DateTime dateTime : dateTimes) {
             backgroundForDateTimeMap.remove(dateTime);
         }
+        markChanged(CHANGED_DECORATIONS);
     }
 
     public void setBackgroundDrawableForDate(Drawable drawable, Date date) {
         DateTime dateTime = CalendarHelper.convertDateToDateTime(date);
         backgroundForDateTimeMap.put(dateTime, drawable);
+        markChanged(CHANGED_DECORATIONS);
     }
 
     public void clearBackgroundDrawableForDate(Date date) {
         DateTime dateTime = CalendarHelper.convertDateToDateTime(date);
         backgroundForDateTimeMap.remove(dateTime);
+        markChanged(CHANGED_DECORATIONS);
     }
 
     public void setBackgroundDrawableForDateTime(Drawable drawable,
                                                  DateTime dateTime) {
         backgroundForDateTimeMap.put(dateTime, drawable);
+        markChanged(CHANGED_DECORATIONS);
     }
 
     public void clearBackgroundDrawableForDateTime(DateTime dateTime) {
         backgroundForDateTimeMap.remove(dateTime);
+        markChanged(CHANGED_DECORATIONS);
     }
 
     /**
@@ -465,6 +625,7 @@ public class CaldroidFragment extends DialogFragment {
             DateTime dateTime = CalendarHelper.convertDateToDateTime(date);
             textColorForDateTimeMap.put(dateTime, resource);
         }
+        markChanged(CHANGED_DECORATIONS);
     }
 
     public void clearTextColorForDates(List<Date> dates) {
@@ -478,20 +639,128 @@ public class CaldroidFragment extends DialogFragment {
     public void setTextColorForDateTimes(
             Map<DateTime, Integer> textColorForDateTimeMap) {
         this.textColorForDateTimeMap.putAll(textColorForDateTimeMap);
+        markChanged(CHANGED_DECORATIONS);
     }
 
     public void setTextColorForDate(int textColorRes, Date date) {
         DateTime dateTime = CalendarHelper.convertDateToDateTime(date);
         textColorForDateTimeMap.put(dateTime, textColorRes);
+        markChanged(CHANGED_DECORATIONS);
     }
 
     public void clearTextColorForDate(Date date) {
         DateTime dateTime = CalendarHelper.convertDateToDateTime(date);
         textColorForDateTimeMap.remove(dateTime);
+        markChanged(CHANGED_DECORATIONS);
     }
 
     public void setTextColorForDateTime(int textColorRes, DateTime dateTime) {
         textColorForDateTimeMap.put(dateTime, textColorRes);
+        markChanged(CHANGED_DECORATIONS);
+    }
+
+    /**
+     * For client to access the palette and the decorated dates directly
+     *
+     * @return
+     */
+    public DateDecorations getDateDecorations() {
+        // Client may modify the decorations
+        markChanged(CHANGED_DECORATIONS);
+        return dateDecorations;
+    }
+
+    /**
+     * Add a decoration style to the palette. Dates decorated with a style
+     * share its background and text color, instead of holding a Drawable
+     * each
+     *
+     * @param backgroundResource drawable resource, 0 for the background of
+     *                           the theme
+     * @param textColorResource  color resource, 0 for the text color of the
+     *                           theme
+     * @return index of the style, to pass to setDecorationStyle()
+     */
+    public int addDecorationStyle(int backgroundResource, int textColorResource) {
+        // Snapshot needs the style before a date or the provider uses it
+        markChanged(CHANGED_DECORATIONS);
+        return dateDecorations.addStyle(new DecorationStyle(backgroundResource,
+                textColorResource));
+    }
+
+    /**
+     * Decorate a date with a style of the palette. This method does not
+     * refresh view, need to call refreshView()
+     *
+     * @param styleIndex index returned by addDecorationStyle(), or
+     *                   DateDecorations.NO_STYLE to remove the decoration
+     * @param epochDay
+     */
+    public void setDecorationStyle(int styleIndex, int epochDay) {
+        setDecorationStyle(styleIndex, epochDay, epochDay);
+    }
+
+    /**
+     * Decorate all the dates from fromEpochDay to toEpochDay, inclusive
+     *
+     * @param styleIndex   index returned by addDecorationStyle(), or
+     *                     DateDecorations.NO_STYLE to remove the decoration
+     * @param fromEpochDay
+     * @param toEpochDay
+     */
+    public void setDecorationStyle(int styleIndex, int fromEpochDay, int toEpochDay) {
+        dateDecorations.setStyleIndex(fromEpochDay, toEpochDay, styleIndex);
+        markChanged(CHANGED_DECORATIONS);
+    }
+
+    public void setDecorationStyle(int styleIndex, Date date) {
+        setDecorationStyle(styleIndex, CalendarHelper.convertDateToEpochDay(date));
+    }
+
+    /**
+     * Remove the decoration style of all the dates, the palette is kept
+     */
+    public void clearDecorationStyles() {
+        dateDecorations.clearDates();
+        markChanged(CHANGED_DECORATIONS);
+    }
+
+    public DecorationProvider getDecorationProvider() {
+        return dateDecorations.getProvider();
+    }
+
+    /**
+     * Set the provider asked for the decoration styles of the pages shown or
+     * prefetched, instead of setting the styles of all the dates up front.
+     * This method does not refresh view, need to call refreshView()
+     *
+     * @param decorationProvider null to remove the provider
+     */
+    public void setDecorationProvider(DecorationProvider decorationProvider) {
+        dateDecorations.setProvider(decorationProvider);
+        markChanged(CHANGED_DECORATIONS);
+    }
+
+    /**
+     * Ask the decoration provider again for all the pages, after the data
+     * it decorates from has changed. This method does not refresh view, need
+     * to call refreshView()
+     */
+    public void invalidateDecorations() {
+        dateDecorations.invalidateProvidedStyles();
+        markChanged(CHANGED_DECORATIONS);
+    }
+
+    /**
+     * Ask the decoration provider again for the pages showing a date from
+     * fromEpochDay to toEpochDay
+     *
+     * @param fromEpochDay
+     * @param toEpochDay
+     */
+    public void invalidateDecorations(int fromEpochDay, int toEpochDay) {
+        dateDecorations.invalidateProvidedStyles(fromEpochDay, toEpochDay);
+        markChanged(CHANGED_DECORATIONS);
     }
 
     /**
@@ -508,14 +777,25 @@ public class CaldroidFragment extends DialogFragment {
             bundle.putString(DIALOG_TITLE, dialogTitle);
         }
 
-        if (selectedDates != null && selectedDates.size() > 0) {
-            bundle.putStringArrayList(SELECTED_DATES,
-                    CalendarHelper.convertToStringList(selectedDates));
+        // Keep the snapshot in memory too. A calendar restored in the same
+        // process adopts it, instead of loading the dates below. Only the
+        // last saved state of this fragment is kept
+        if (retainedStateToken != 0) {
+            RetainedCaldroidStates.discard(retainedStateToken);
+        }
+        retainedStateToken = RetainedCaldroidStates.put(getRetainableSnapshot());
+        bundle.putLong(_RETAINED_STATE, retainedStateToken);
+
+        // Dates are saved as ranges of epoch days, so the size of the bundle
+        // depends on the number of ranges, not on the number of dates
+        if (!selectedDateSet.isEmpty()) {
+            bundle.putIntArray(SELECTED_DATE_RANGES,
+                    selectedDateSet.toRangeSet().toRangeArray());
         }
 
-        if (disableDates != null && disableDates.size() > 0) {
-            bundle.putStringArrayList(DISABLE_DATES,
-                    CalendarHelper.convertToStringList(disableDates));
+        if (!disableDateSet.isEmpty()) {
+            bundle.putIntArray(DISABLE_DATE_RANGES,
+                    disableDateSet.toRangeSet().toRangeArray());
         }
 
         if (minDateTime != null) {
@@ -531,6 +811,10 @@ public class CaldroidFragment extends DialogFragment {
         bundle.putInt(START_DAY_OF_WEEK, startDayOfWeek);
         bundle.putBoolean(SIX_WEEKS_IN_CALENDAR, sixWeeksInCalendar);
         bundle.putInt(THEME_RESOURCE, themeResource);
+        bundle.putBoolean(CANVAS_MONTH_VIEW, canvasMonthView);
+        bundle.putBoolean(VERTICAL_SCROLL, verticalScroll);
+        bundle.putBoolean(VIEW_BASED_PAGES, viewBasedPages);
+        bundle.putInt(PREFETCH_MONTHS, prefetchMonths);
 
         Bundle args = getArguments();
         if (args != null && args.containsKey(SQUARE_TEXT_VIEW_CELL)) {
@@ -586,6 +870,10 @@ public class CaldroidFragment extends DialogFragment {
      * Get current virtual position of the month being viewed
      */
     public int getCurrentVirtualPosition() {
+        if (verticalScroll) {
+            return monthListAdapter.getPosition(month, year);
+        }
+
         int currentPage = dateViewPager.getCurrentItem();
         return pageChangeListener.getCurrent(currentPage);
     }
@@ -599,12 +887,26 @@ public class CaldroidFragment extends DialogFragment {
         moveToDateTime(CalendarHelper.convertDateToDateTime(date));
     }
 
+    /**
+     * Move calendar to the month of a date, with animation
+     *
+     * @param epochDay see {@link CaldroidDate}
+     */
+    public void moveToDate(int epochDay) {
+        moveToDateTime(CalendarHelper.convertEpochDayToDateTime(epochDay));
+    }
+
     /**
      * Move calendar to specified dateTime, with animation
      *
      * @param dateTime
      */
     public void moveToDateTime(DateTime dateTime) {
+        if (verticalScroll) {
+            monthRecyclerView.smoothScrollToPosition(monthListAdapter
+                    .getPosition(dateTime.getMonth(), dateTime.getYear()));
+            return;
+        }
 
         DateTime firstOfMonth = new DateTime(year, month, 1, 0, 0, 0, 0);
         DateTime lastOfMonth = firstOfMonth.getEndOfMonth();
@@ -657,6 +959,15 @@ public class CaldroidFragment extends DialogFragment {
         setCalendarDateTime(CalendarHelper.convertDateToDateTime(date));
     }
 
+    /**
+     * Set month and year of the calendar to those of a date
+     *
+     * @param epochDay see {@link CaldroidDate}
+     */
+    public void setCalendarDate(int epochDay) {
+        setCalendarDateTime(CalendarHelper.convertEpochDayToDateTime(epochDay));
+    }
+
     public void setCalendarDateTime(DateTime dateTime) {
         month = dateTime.getMonth();
         year = dateTime.getYear();
@@ -666,13 +977,24 @@ public class CaldroidFragment extends DialogFragment {
             caldroidListener.onChangeMonth(month, year);
         }
 
-        refreshView();
+        // When only the month changes, adapters are already refreshed by
+        // DatePageChangeListener. Only refresh the title
+        if (changes == 0) {
+            refreshMonthTitleTextView();
+        } else {
+            refreshView();
+        }
     }
 
     /**
      * Set calendar to previous month
      */
     public void prevMonth() {
+        if (verticalScroll) {
+            monthRecyclerView.smoothScrollToPosition(
+                    Math.max(0, getCurrentVirtualPosition() - 1));
+            return;
+        }
         dateViewPager.setCurrentItem(pageChangeListener.getCurrentPage() - 1);
     }
 
@@ -680,6 +1002,11 @@ public class CaldroidFragment extends DialogFragment {
      * Set calendar to next month
      */
     public void nextMonth() {
+        if (verticalScroll) {
+            monthRecyclerView.smoothScrollToPosition(
+                    getCurrentVirtualPosition() + 1);
+            return;
+        }
         dateViewPager.setCurrentItem(pageChangeListener.getCurrentPage() + 1);
     }
 
@@ -687,27 +1014,335 @@ public class CaldroidFragment extends DialogFragment {
      * Clear all disable dates. Notice this does not refresh the calendar, need
      * to explicitly call refreshView()
      */
-    public void clearDisableDates() {
-        disableDates.clear();
+    public void clearDisableDates() {
+        disableDateSet.clear();
+        markChanged(CHANGED_DISABLE_DATES);
+    }
+
+    /**
+     * Set disableDates from ArrayList of Date
+     *
+     * @param disableDateList
+     */
+    public void setDisableDates(ArrayList<Date> disableDateList) {
+        if (disableDateList == null || disableDateList.size() == 0) {
+            return;
+        }
+
+        disableDateSet.clear();
+
+        for (Date date : disableDateList) {
+            DateTime dateTime = CalendarHelper.convertDateToDateTime(date);
+            disableDateSet.add(CalendarHelper.convertDateTimeToEpochDay(dateTime));
+        }
+
+        markChanged(CHANGED_DISABLE_DATES);
+    }
+
+    /**
+     * Disable the dates from fromDate to toDate. Whole words of the date
+     * set are filled at once, so disabling a long period is cheap. This method does not
+     * refresh view, need to call refreshView()
+     *
+     * @param fromDate
+     * @param toDate
+     */
+    public void setDisableDates(Date fromDate, Date toDate) {
+        // Ensure fromDate is before toDate
+        if (fromDate == null || toDate == null || fromDate.after(toDate)) {
+            return;
+        }
+
+        setDisableDates(getEpochDay(fromDate), getEpochDay(toDate));
+    }
+
+    /**
+     * Disable the dates from fromEpochDay to toEpochDay, inclusive. This
+     * method does not refresh view, need to call refreshView()
+     *
+     * @param fromEpochDay see {@link CaldroidDate}
+     * @param toEpochDay
+     */
+    public void setDisableDates(int fromEpochDay, int toEpochDay) {
+        if (fromEpochDay > toEpochDay) {
+            return;
+        }
+
+        disableDateSet.clear();
+        disableDateSet.addRange(fromEpochDay, toEpochDay);
+        markChanged(CHANGED_DISABLE_DATES);
+    }
+
+    /**
+     * Select the dates from fromDate to toDate, in addition to the dates
+     * already selected. Only the cells whose state changed are refreshed, it's
+     * not necessary to call refreshView()
+     *
+     * @param fromDate
+     * @param toDate
+     */
+    public void addSelectedDates(Date fromDate, Date toDate) {
+        // Ensure fromDate is before toDate
+        if (fromDate == null || toDate == null || fromDate.after(toDate)) {
+            return;
+        }
+
+        addSelectedDates(getEpochDay(fromDate), getEpochDay(toDate));
+    }
+
+    /**
+     * Same as {@link #addSelectedDates(Date, Date)}, with epoch days
+     *
+     * @param fromEpochDay see {@link CaldroidDate}
+     * @param toEpochDay
+     */
+    public void addSelectedDates(int fromEpochDay, int toEpochDay) {
+        updateDateSet(selectedDateSet, CHANGED_SELECTED_DATES, fromEpochDay,
+                toEpochDay, true);
+    }
+
+    /**
+     * Clear selection of the dates from fromDate to toDate. Only the cells
+     * whose state changed are refreshed, it's not necessary to call
+     * refreshView()
+     *
+     * @param fromDate
+     * @param toDate
+     */
+    public void removeSelectedDates(Date fromDate, Date toDate) {
+        // Ensure fromDate is before toDate
+        if (fromDate == null || toDate == null || fromDate.after(toDate)) {
+            return;
+        }
+
+        removeSelectedDates(getEpochDay(fromDate), getEpochDay(toDate));
+    }
+
+    /**
+     * Same as {@link #removeSelectedDates(Date, Date)}, with epoch days
+     *
+     * @param fromEpochDay see {@link CaldroidDate}
+     * @param toEpochDay
+     */
+    public void removeSelectedDates(int fromEpochDay, int toEpochDay) {
+        updateDateSet(selectedDateSet, CHANGED_SELECTED_DATES, fromEpochDay,
+                toEpochDay, false);
+    }
+
+    /**
+     * Disable the dates from fromDate to toDate, in addition to the dates
+     * already disabled. Only the cells whose state changed are refreshed, it's
+     * not necessary to call refreshView()
+     *
+     * @param fromDate
+     * @param toDate
+     */
+    public void addDisableDates(Date fromDate, Date toDate) {
+        // Ensure fromDate is before toDate
+        if (fromDate == null || toDate == null || fromDate.after(toDate)) {
+            return;
+        }
+
+        addDisableDates(getEpochDay(fromDate), getEpochDay(toDate));
+    }
+
+    /**
+     * Same as {@link #addDisableDates(Date, Date)}, with epoch days
+     *
+     * @param fromEpochDay see {@link CaldroidDate}
+     * @param toEpochDay
+     */
+    public void addDisableDates(int fromEpochDay, int toEpochDay) {
+        updateDateSet(disableDateSet, CHANGED_DISABLE_DATES, fromEpochDay,
+                toEpochDay, true);
+    }
+
+    /**
+     * Enable again the dates from fromDate to toDate. Only the cells whose
+     * state changed are refreshed, it's not necessary to call refreshView()
+     *
+     * @param fromDate
+     * @param toDate
+     */
+    public void removeDisableDates(Date fromDate, Date toDate) {
+        // Ensure fromDate is before toDate
+        if (fromDate == null || toDate == null || fromDate.after(toDate)) {
+            return;
+        }
+
+        removeDisableDates(getEpochDay(fromDate), getEpochDay(toDate));
+    }
+
+    /**
+     * Same as {@link #removeDisableDates(Date, Date)}, with epoch days
+     *
+     * @param fromEpochDay see {@link CaldroidDate}
+     * @param toEpochDay
+     */
+    public void removeDisableDates(int fromEpochDay, int toEpochDay) {
+        updateDateSet(disableDateSet, CHANGED_DISABLE_DATES, fromEpochDay,
+                toEpochDay, false);
+    }
+
+    /**
+     * Select the date if it is not selected, clear its selection otherwise.
+     * Only the cell of the date is refreshed, it's not necessary to call
+     * refreshView()
+     *
+     * @param date
+     * @return true if the date is selected after the call
+     */
+    public boolean toggleSelectedDate(Date date) {
+        if (date == null) {
+            return false;
+        }
+
+        return toggleSelectedDate(getEpochDay(date));
+    }
+
+    /**
+     * Same as {@link #toggleSelectedDate(Date)}, with an epoch day
+     *
+     * @param epochDay see {@link CaldroidDate}
+     * @return true if the date is selected after the call
+     */
+    public boolean toggleSelectedDate(int epochDay) {
+        boolean selected = !selectedDateSet.contains(epochDay);
+        updateDateSet(selectedDateSet, CHANGED_SELECTED_DATES, epochDay,
+                epochDay, selected);
+        return selected;
+    }
+
+    private void updateDateSet(DateBitSet dateSet, int change,
+                               int fromEpochDay, int toEpochDay, boolean add) {
+        if (fromEpochDay > toEpochDay) {
+            return;
+        }
+
+        if (add) {
+            dateSet.addRange(fromEpochDay, toEpochDay);
+        } else {
+            dateSet.removeRange(fromEpochDay, toEpochDay);
+        }
+        markChanged(change);
+
+        refreshChangedCells();
+    }
+
+    /**
+     * Refresh only the cells whose state changed since the last refresh.
+     * Falls back to refreshView() if parameters other than dates changed
+     */
+    protected void refreshChangedCells() {
+        // Views are not created yet, they get the dates when created
+        if (month == -1 || year == -1
+                || (datePagerAdapters.isEmpty() && monthListAdapter == null)) {
+            return;
+        }
+
+        if ((changes & ~(CHANGED_SELECTED_DATES | CHANGED_DISABLE_DATES)) != 0) {
+            refreshView();
+            return;
+        }
+
+        CaldroidData caldroidData = getCaldroidDataSnapshot();
+
+        for (int i = 0; i < datePagerAdapters.size(); i++) {
+            CaldroidGridAdapter adapter = datePagerAdapters.get(i);
+            int[] changedPositions = adapter.updateCaldroidData(caldroidData);
+
+            DateGridFragment fragment = fragments != null && i < fragments.size()
+                    ? fragments.get(i) : null;
+            if (changedPositions == null || fragment == null) {
+                adapter.notifyDataSetChanged();
+            } else {
+                fragment.refreshCells(changedPositions);
+            }
+        }
+
+        // Rows of the month list draw all their cells at once
+        if (monthListAdapter != null) {
+            monthListAdapter.setCaldroidData(caldroidData, extraData);
+        }
+
+        prefetchAroundCurrentMonth();
+    }
+
+    /**
+     * Disable all the dates matching rule, e.g. every weekend with
+     * DateRule.weekDays(SATURDAY, SUNDAY). The rule is only evaluated for the
+     * dates shown, so it can cover any period. Rules are not saved by
+     * getSavedStates(). This method does not refresh view, need to call
+     * refreshView()
+     *
+     * @param rule
+     */
+    public void addDisableDateRule(DateRule rule) {
+        if (rule == null) {
+            return;
+        }
+        disableDateRules.add(rule);
+        markChanged(CHANGED_DISABLE_DATES);
+    }
+
+    public void removeDisableDateRule(DateRule rule) {
+        if (disableDateRules.remove(rule)) {
+            markChanged(CHANGED_DISABLE_DATES);
+        }
+    }
+
+    public void clearDisableDateRules() {
+        disableDateRules.clear();
+        markChanged(CHANGED_DISABLE_DATES);
+    }
+
+    /**
+     * Get a copy of the rules of disabled dates
+     *
+     * @return
+     */
+    public ArrayList<DateRule> getDisableDateRules() {
+        return new ArrayList<DateRule>(disableDateRules);
+    }
+
+    /**
+     * Get a copy of the disabled dates
+     *
+     * @return
+     */
+    public DateBitSet getDisableDateSet() {
+        return new DateBitSet(disableDateSet);
+    }
+
+    /**
+     * Get a copy of the selected dates
+     *
+     * @return
+     */
+    public DateBitSet getSelectedDateSet() {
+        return new DateBitSet(selectedDateSet);
+    }
+
+    /**
+     * Get the disabled dates as ranges
+     *
+     * @return
+     */
+    public DateRangeSet getDisableDateRanges() {
+        return disableDateSet.toRangeSet();
     }
 
     /**
-     * Set disableDates from ArrayList of Date
+     * Get the selected dates as ranges
      *
-     * @param disableDateList
+     * @return
      */
-    public void setDisableDates(ArrayList<Date> disableDateList) {
-        if (disableDateList == null || disableDateList.size() == 0) {
-            return;
-        }
-
-        disableDates.clear();
-
-        for (Date date : disableDateList) {
-            DateTime dateTime = CalendarHelper.convertDateToDateTime(date);
-            disableDates.add(dateTime);
-        }
+    public DateRangeSet getSelectedDateRanges() {
+        return selectedDateSet.toRangeSet();
+    }
 
+    private static int getEpochDay(Date date) {
+        return CalendarHelper.convertDateToEpochDay(date);
     }
 
     /**
@@ -735,13 +1370,16 @@ public class CaldroidFragment extends DialogFragment {
             return;
         }
 
-        disableDates.clear();
+        disableDateSet.clear();
 
         for (String dateString : disableDateStrings) {
-            DateTime dateTime = CalendarHelper.getDateTimeFromString(
-                    dateString, dateFormat);
-            disableDates.add(dateTime);
+            int epochDay = CalendarHelper.getEpochDayFromString(dateString,
+                    dateFormat);
+            if (epochDay != CalendarHelper.INVALID_EPOCH_DAY) {
+                disableDateSet.add(epochDay);
+            }
         }
+        markChanged(CHANGED_DISABLE_DATES);
     }
 
     /**
@@ -749,7 +1387,8 @@ public class CaldroidFragment extends DialogFragment {
      * explicitly call refreshView()
      */
     public void clearSelectedDates() {
-        selectedDates.clear();
+        selectedDateSet.clear();
+        markChanged(CHANGED_SELECTED_DATES);
     }
 
     /**
@@ -768,17 +1407,24 @@ public class CaldroidFragment extends DialogFragment {
             return;
         }
 
-        selectedDates.clear();
-
-        DateTime fromDateTime = CalendarHelper.convertDateToDateTime(fromDate);
-        DateTime toDateTime = CalendarHelper.convertDateToDateTime(toDate);
+        setSelectedDates(getEpochDay(fromDate), getEpochDay(toDate));
+    }
 
-        DateTime dateTime = fromDateTime;
-        while (dateTime.lt(toDateTime)) {
-            selectedDates.add(dateTime);
-            dateTime = dateTime.plusDays(1);
+    /**
+     * Select the dates from fromEpochDay to toEpochDay, inclusive. This
+     * method does not refresh view, need to call refreshView()
+     *
+     * @param fromEpochDay see {@link CaldroidDate}
+     * @param toEpochDay
+     */
+    public void setSelectedDates(int fromEpochDay, int toEpochDay) {
+        if (fromEpochDay > toEpochDay) {
+            return;
         }
-        selectedDates.add(toDateTime);
+
+        selectedDateSet.clear();
+        selectedDateSet.addRange(fromEpochDay, toEpochDay);
+        markChanged(CHANGED_SELECTED_DATES);
     }
 
     /**
@@ -807,8 +1453,17 @@ public class CaldroidFragment extends DialogFragment {
         if (date == null) {
             return;
         }
-        DateTime dateTime = CalendarHelper.convertDateToDateTime(date);
-        selectedDates.add(dateTime);
+        setSelectedDate(getEpochDay(date));
+    }
+
+    /**
+     * Select single date. This method does not refresh view
+     *
+     * @param epochDay see {@link CaldroidDate}
+     */
+    public void setSelectedDate(int epochDay) {
+        selectedDateSet.add(epochDay);
+        markChanged(CHANGED_SELECTED_DATES);
     }
     
     /**
@@ -819,8 +1474,18 @@ public class CaldroidFragment extends DialogFragment {
         if (date == null) {
             return;
         }
-        DateTime dateTime = CalendarHelper.convertDateToDateTime(date);
-        selectedDates.remove(dateTime);
+        clearSelectedDate(getEpochDay(date));
+    }
+
+    /**
+     * Clear selection of the specified date. This method does not refresh
+     * view
+     *
+     * @param epochDay see {@link CaldroidDate}
+     */
+    public void clearSelectedDate(int epochDay) {
+        selectedDateSet.remove(epochDay);
+        markChanged(CHANGED_SELECTED_DATES);
     }
     
     /**
@@ -831,8 +1496,17 @@ public class CaldroidFragment extends DialogFragment {
         if (date == null) {
             return false;
         }
-        DateTime dateTime = CalendarHelper.convertDateToDateTime(date);
-        return selectedDates.contains(dateTime);
+        return isSelectedDate(getEpochDay(date));
+    }
+
+    /**
+     * Checks whether the specified date is selected
+     *
+     * @param epochDay see {@link CaldroidDate}
+     * @return
+     */
+    public boolean isSelectedDate(int epochDay) {
+        return selectedDateSet.contains(epochDay);
     }
 
     /**
@@ -871,7 +1545,9 @@ public class CaldroidFragment extends DialogFragment {
 
     public void setEnableSwipe(boolean enableSwipe) {
         this.enableSwipe = enableSwipe;
-        dateViewPager.setEnabled(enableSwipe);
+        if (dateViewPager != null) {
+            dateViewPager.setEnabled(enableSwipe);
+        }
     }
 
     /**
@@ -885,6 +1561,18 @@ public class CaldroidFragment extends DialogFragment {
         } else {
             minDateTime = CalendarHelper.convertDateToDateTime(minDate);
         }
+        markChanged(CHANGED_MIN_MAX_DATES);
+    }
+
+    /**
+     * Set min date. This method does not refresh view. Use
+     * setMinDate((Date) null) to remove min date
+     *
+     * @param epochDay see {@link CaldroidDate}
+     */
+    public void setMinDate(int epochDay) {
+        minDateTime = CalendarHelper.convertEpochDayToDateTime(epochDay);
+        markChanged(CHANGED_MIN_MAX_DATES);
     }
 
     public boolean isSixWeeksInCalendar() {
@@ -893,7 +1581,10 @@ public class CaldroidFragment extends DialogFragment {
 
     public void setSixWeeksInCalendar(boolean sixWeeksInCalendar) {
         this.sixWeeksInCalendar = sixWeeksInCalendar;
-        dateViewPager.setSixWeeksInCalendar(sixWeeksInCalendar);
+        if (dateViewPager != null) {
+            dateViewPager.setSixWeeksInCalendar(sixWeeksInCalendar);
+        }
+        markChanged(CHANGED_LAYOUT);
     }
 
     /**
@@ -910,6 +1601,7 @@ public class CaldroidFragment extends DialogFragment {
             minDateTime = CalendarHelper.getDateTimeFromString(minDateString,
                     dateFormat);
         }
+        markChanged(CHANGED_MIN_MAX_DATES);
     }
 
     /**
@@ -923,6 +1615,18 @@ public class CaldroidFragment extends DialogFragment {
         } else {
             maxDateTime = CalendarHelper.convertDateToDateTime(maxDate);
         }
+        markChanged(CHANGED_MIN_MAX_DATES);
+    }
+
+    /**
+     * Set max date. This method does not refresh view. Use
+     * setMaxDate((Date) null) to remove max date
+     *
+     * @param epochDay see {@link CaldroidDate}
+     */
+    public void setMaxDate(int epochDay) {
+        maxDateTime = CalendarHelper.convertEpochDayToDateTime(epochDay);
+        markChanged(CHANGED_MIN_MAX_DATES);
     }
 
     /**
@@ -939,6 +1643,7 @@ public class CaldroidFragment extends DialogFragment {
             maxDateTime = CalendarHelper.getDateTimeFromString(maxDateString,
                     dateFormat);
         }
+        markChanged(CHANGED_MIN_MAX_DATES);
     }
 
     /**
@@ -963,24 +1668,8 @@ public class CaldroidFragment extends DialogFragment {
                 public void onItemClick(AdapterView<?> parent, View view,
                                         int position, long id) {
 
-                    DateTime dateTime = dateInMonthsList.get(position);
-
-                    if (caldroidListener != null) {
-                        if (!enableClickOnDisabledDates) {
-                            if ((minDateTime != null && dateTime
-                                    .lt(minDateTime))
-                                    || (maxDateTime != null && dateTime
-                                    .gt(maxDateTime))
-                                    || (disableDates != null && disableDates
-                                    .indexOf(dateTime) != -1)) {
-                                return;
-                            }
-                        }
-
-                        Date date = CalendarHelper
-                                .convertDateTimeToDate(dateTime);
-                        caldroidListener.onSelectDate(date, view);
-                    }
+                    onDateClick((CaldroidGridAdapter) parent.getAdapter(),
+                            position, view);
                 }
             };
         }
@@ -1001,25 +1690,8 @@ public class CaldroidFragment extends DialogFragment {
                 public boolean onItemLongClick(AdapterView<?> parent,
                                                View view, int position, long id) {
 
-                    DateTime dateTime = dateInMonthsList.get(position);
-
-                    if (caldroidListener != null) {
-                        if (!enableClickOnDisabledDates) {
-                            if ((minDateTime != null && dateTime
-                                    .lt(minDateTime))
-                                    || (maxDateTime != null && dateTime
-                                    .gt(maxDateTime))
-                                    || (disableDates != null && disableDates
-                                    .indexOf(dateTime) != -1)) {
-                                return false;
-                            }
-                        }
-                        Date date = CalendarHelper
-                                .convertDateTimeToDate(dateTime);
-                        caldroidListener.onLongClickDate(date, view);
-                    }
-
-                    return true;
+                    return onDateLongClick((CaldroidGridAdapter) parent.getAdapter(),
+                            position, view);
                 }
             };
         }
@@ -1027,11 +1699,92 @@ public class CaldroidFragment extends DialogFragment {
         return dateItemLongClickListener;
     }
 
+    /**
+     * Callback to listener when date is valid (not disable, not outside of
+     * min/max date), for pages drawn by MonthView
+     *
+     * @return
+     */
+    public MonthView.OnCellClickListener getDateCellClickListener() {
+        if (dateCellClickListener == null) {
+            dateCellClickListener = new MonthView.OnCellClickListener() {
+                @Override
+                public void onCellClick(MonthView monthView, int position) {
+                    onDateClick(monthView.getAdapter(), position, monthView);
+                }
+
+                @Override
+                public boolean onCellLongClick(MonthView monthView, int position) {
+                    return onDateLongClick(monthView.getAdapter(), position,
+                            monthView);
+                }
+            };
+        }
+
+        return dateCellClickListener;
+    }
+
+    /**
+     * Check if user can click on a date. Uses the constraints the adapter
+     * drew the cell with, so a cell drawn as disabled is never clickable
+     *
+     * @param adapter
+     * @param epochDay
+     * @return
+     */
+    private boolean isDateClickable(CaldroidGridAdapter adapter, int epochDay) {
+        return enableClickOnDisabledDates
+                || adapter.getDateConstraints().isSelectable(epochDay);
+    }
+
+    private void onDateClick(CaldroidGridAdapter adapter, int position,
+                             View view) {
+        int epochDay = adapter.getMonthPage().getEpochDay(position);
+        if (caldroidListener != null && isDateClickable(adapter, epochDay)) {
+            caldroidListener.onSelectDate(epochDay, view);
+        }
+    }
+
+    private boolean onDateLongClick(CaldroidGridAdapter adapter, int position,
+                                    View view) {
+        if (caldroidListener != null) {
+            int epochDay = adapter.getMonthPage().getEpochDay(position);
+            if (!isDateClickable(adapter, epochDay)) {
+                return false;
+            }
+            caldroidListener.onLongClickDate(epochDay, view);
+        }
+
+        return true;
+    }
+
+    /**
+     * Dates the user can pick: min / max dates, disabled dates and rules of
+     * disabled dates. The same constraints are used to draw the cells and to
+     * accept clicks
+     *
+     * @return
+     */
+    public DateConstraints getDateConstraints() {
+        return getCaldroidDataSnapshot().getDateConstraints();
+    }
+
     /**
      * Refresh month title text view when user swipe
      */
     protected void refreshMonthTitleTextView() {
-        // Refresh title view
+        monthTitleTextView.setText(getMonthTitle(month, year));
+    }
+
+    /**
+     * Get the localized title of a month, used by the title view and by the
+     * rows of the month list
+     *
+     * @param month
+     * @param year
+     * @return
+     */
+    protected String getMonthTitle(int month, int year) {
         firstMonthTime.year = year;
         firstMonthTime.month = month - 1;
         firstMonthTime.monthDay = 15;
@@ -1043,12 +1796,13 @@ public class CaldroidFragment extends DialogFragment {
         String monthTitle = DateUtils.formatDateRange(getActivity(),
                 monthYearFormatter, millis, millis, MONTH_YEAR_FLAG).toString();
 
-        monthTitleTextView.setText(monthTitle.toUpperCase(Locale.getDefault()));
+        return monthTitle.toUpperCase(Locale.getDefault());
     }
 
     /**
      * Refresh view when parameter changes. You should always change all
-     * parameters first, then call this method.
+     * parameters first, then call this method. Only the data of parameters
+     * changed since the last snapshot is rebuilt
      */
     public void refreshView() {
         // If month and year is not yet initialized, refreshView doesn't do
@@ -1059,10 +1813,14 @@ public class CaldroidFragment extends DialogFragment {
 
         refreshMonthTitleTextView();
 
+        // Snapshot is shared by all adapters, adapters skip it if they
+        // already have it
+        CaldroidData caldroidData = getCaldroidDataSnapshot();
+
         // Refresh the date grid views
         for (CaldroidGridAdapter adapter : datePagerAdapters) {
             // Reset caldroid data
-            adapter.setCaldroidData(getCaldroidData());
+            adapter.setCaldroidData(caldroidData);
 
             // Reset extra data
             adapter.setExtraData(extraData);
@@ -1073,6 +1831,27 @@ public class CaldroidFragment extends DialogFragment {
             // Refresh view
             adapter.notifyDataSetChanged();
         }
+
+        // Rows of the month list are refreshed when they are bound
+        if (monthListAdapter != null) {
+            monthListAdapter.setCaldroidData(caldroidData, extraData);
+        }
+
+        prefetchAroundCurrentMonth();
+    }
+
+    /**
+     * Compute the months around current month in background, months in
+     * prefetchDirection first
+     */
+    private void prefetchAroundCurrentMonth() {
+        if (monthPrefetcher == null) {
+            return;
+        }
+
+        int todayEpochDay = CalendarHelper.convertDateToEpochDay(new Date());
+        monthPrefetcher.prefetch(month, year, prefetchDirection,
+                getCaldroidDataSnapshot(), todayEpochDay);
     }
 
     /**
@@ -1086,6 +1865,7 @@ public class CaldroidFragment extends DialogFragment {
 
         CalendarHelper.setup();
 
+        CaldroidData adoptedData = null;
         if (args != null) {
             // Get month, year
             month = args.getInt(MONTH, -1);
@@ -1127,50 +1907,47 @@ public class CaldroidFragment extends DialogFragment {
                 squareTextViewCell = args.getBoolean(SQUARE_TEXT_VIEW_CELL, false);
             }
 
+            // Get canvasMonthView
+            canvasMonthView = args.getBoolean(CANVAS_MONTH_VIEW, false);
+
+            // Get verticalScroll
+            verticalScroll = args.getBoolean(VERTICAL_SCROLL, false);
+
+            // Get viewBasedPages
+            viewBasedPages = args.getBoolean(VIEW_BASED_PAGES, false);
+
+            // Get prefetchMonths
+            prefetchMonths = args.getInt(PREFETCH_MONTHS, 0);
+
             // Get clickable setting
             enableClickOnDisabledDates = args.getBoolean(
                     ENABLE_CLICK_ON_DISABLED_DATES, false);
 
-            // Get disable dates
-            ArrayList<String> disableDateStrings = args
-                    .getStringArrayList(DISABLE_DATES);
-            if (disableDateStrings != null && disableDateStrings.size() > 0) {
-                disableDates.clear();
-                for (String dateString : disableDateStrings) {
-                    DateTime dt = CalendarHelper.getDateTimeFromString(
-                            dateString, null);
-                    disableDates.add(dt);
-                }
-            }
+            // Dates are loaded once for these arguments. A retained
+            // instance keeps its current dates when its view is created again
+            if (args != loadedArguments) {
+                loadedArguments = args;
 
-            // Get selected dates
-            ArrayList<String> selectedDateStrings = args
-                    .getStringArrayList(SELECTED_DATES);
-            if (selectedDateStrings != null && selectedDateStrings.size() > 0) {
-                selectedDates.clear();
-                for (String dateString : selectedDateStrings) {
-                    DateTime dt = CalendarHelper.getDateTimeFromString(
-                            dateString, null);
-                    selectedDates.add(dt);
+                // Adopt the data kept in memory when the states were saved,
+                // the dates in the bundle are only used after process death
+                adoptedData = takeRetainedData(args);
+                if (adoptedData != null) {
+                    restoreRetainedData(adoptedData);
+                } else {
+                    retrieveDates(args);
                 }
             }
 
-            // Get min date and max date
-            String minDateTimeString = args.getString(MIN_DATE);
-            if (minDateTimeString != null) {
-                minDateTime = CalendarHelper.getDateTimeFromString(
-                        minDateTimeString, null);
-            }
-
-            String maxDateTimeString = args.getString(MAX_DATE);
-            if (maxDateTimeString != null) {
-                maxDateTime = CalendarHelper.getDateTimeFromString(
-                        maxDateTimeString, null);
-            }
-
             // Get theme
             themeResource = args.getInt(THEME_RESOURCE, R.style.CaldroidDefault);
         }
+
+        // All parameters are reloaded, unless the snapshot was adopted
+        if (adoptedData != null) {
+            changes = getChangesSinceAdopted(adoptedData);
+        } else {
+            markChanged(CHANGED_ALL);
+        }
         if (month == -1 || year == -1) {
             DateTime dateTime = DateTime.today(TimeZone.getDefault());
             month = dateTime.getMonth();
@@ -1178,6 +1955,162 @@ public class CaldroidFragment extends DialogFragment {
         }
     }
 
+    /**
+     * Load disabled dates, selected dates and min / max dates from arguments
+     *
+     * @param args
+     */
+    private void retrieveDates(Bundle args) {
+        // Get disable dates, as ranges or as strings
+        int[] disableDateRanges = args.getIntArray(DISABLE_DATE_RANGES);
+        ArrayList<String> disableDateStrings = args
+                .getStringArrayList(DISABLE_DATES);
+        if (disableDateRanges != null) {
+            disableDateSet = DateBitSet.fromRangeArray(disableDateRanges);
+        } else if (disableDateStrings != null && disableDateStrings.size() > 0) {
+            disableDateSet.clear();
+            for (String dateString : disableDateStrings) {
+                int epochDay = CalendarHelper.getEpochDayFromString(
+                        dateString, null);
+                if (epochDay != CalendarHelper.INVALID_EPOCH_DAY) {
+                    disableDateSet.add(epochDay);
+                }
+            }
+        }
+
+        // Get selected dates, as ranges or as strings
+        int[] selectedDateRanges = args.getIntArray(SELECTED_DATE_RANGES);
+        ArrayList<String> selectedDateStrings = args
+                .getStringArrayList(SELECTED_DATES);
+        if (selectedDateRanges != null) {
+            selectedDateSet = DateBitSet.fromRangeArray(selectedDateRanges);
+        } else if (selectedDateStrings != null && selectedDateStrings.size() > 0) {
+            selectedDateSet.clear();
+            for (String dateString : selectedDateStrings) {
+                int epochDay = CalendarHelper.getEpochDayFromString(
+                        dateString, null);
+                if (epochDay != CalendarHelper.INVALID_EPOCH_DAY) {
+                    selectedDateSet.add(epochDay);
+                }
+            }
+        }
+
+        // Get min date and max date
+        String minDateTimeString = args.getString(MIN_DATE);
+        if (minDateTimeString != null) {
+            minDateTime = CalendarHelper.getDateTimeFromString(
+                    minDateTimeString, null);
+        }
+
+        String maxDateTimeString = args.getString(MAX_DATE);
+        if (maxDateTimeString != null) {
+            maxDateTime = CalendarHelper.getDateTimeFromString(
+                    maxDateTimeString, null);
+        }
+    }
+
+    /**
+     * Snapshot of the current parameters that can be kept in
+     * RetainedCaldroidStates. It is the published snapshot if possible, so
+     * the restored calendar reuses it as is. The decoration provider and
+     * background drawables usually refer to the activity, through the
+     * provider or drawable callbacks, so they are left out. Does not publish
+     * the snapshot, pending changes are still refreshed by refreshView()
+     *
+     * @return
+     */
+    private CaldroidData getRetainableSnapshot() {
+        int retainedChanges = changes;
+        Map<DateTime, Drawable> retainedBackgrounds = backgroundForDateTimeMap;
+        DateDecorations retainedDecorations = dateDecorations;
+        if (!backgroundForDateTimeMap.isEmpty()
+                || dateDecorations.getProvider() != null) {
+            retainedBackgrounds = new HashMap<>();
+            retainedDecorations = new DateDecorations(dateDecorations);
+            retainedDecorations.setProvider(null);
+            retainedChanges |= CHANGED_DECORATIONS;
+        }
+
+        if (caldroidDataSnapshot != null && retainedChanges == 0) {
+            return caldroidDataSnapshot;
+        }
+        return new CaldroidData(caldroidDataSnapshot, retainedChanges,
+                disableDateSet, disableDateRules, selectedDateSet, minDateTime,
+                maxDateTime, startDayOfWeek, sixWeeksInCalendar,
+                squareTextViewCell, themeResource, retainedBackgrounds,
+                textColorForDateTimeMap, retainedDecorations);
+    }
+
+    /**
+     * Take the data retained by getSavedStates() for args, if any
+     *
+     * @param args
+     * @return
+     */
+    private CaldroidData takeRetainedData(Bundle args) {
+        if (args == retainedArguments) {
+            CaldroidData data = retainedData;
+            retainedData = null;
+            retainedArguments = null;
+            return data;
+        }
+
+        long token = args.getLong(_RETAINED_STATE, 0);
+        return token == 0 ? null : RetainedCaldroidStates.take(token);
+    }
+
+    /**
+     * Adopt the data retained by getSavedStates(). The retained snapshot
+     * becomes the published snapshot, this fragment gets its own copies of
+     * the sets and decorations to modify. Background drawables are not
+     * retained, the current ones are kept
+     *
+     * @param retainedData
+     */
+    private void restoreRetainedData(CaldroidData retainedData) {
+        caldroidDataSnapshot = retainedData;
+        caldroidData = retainedData.toMap();
+
+        disableDateSet = new DateBitSet(retainedData.getDisableDateSet());
+        disableDateRules = new ArrayList<DateRule>(
+                retainedData.getDisableDateRules());
+        selectedDateSet = new DateBitSet(retainedData.getSelectedDateSet());
+        minDateTime = retainedData.getMinDateTime();
+        maxDateTime = retainedData.getMaxDateTime();
+        textColorForDateTimeMap = new HashMap<>(
+                retainedData.getTextColorForDateTimeMap());
+        // Keep the provider set on this fragment, if any
+        DecorationProvider decorationProvider = dateDecorations.getProvider();
+        dateDecorations = new DateDecorations(retainedData.getDateDecorations());
+        dateDecorations.setProvider(decorationProvider);
+    }
+
+    /**
+     * Parameters that differ between this fragment and a snapshot it
+     * adopted. Dates are the same, the layout and theme depend on the
+     * arguments and orientation, and decorations left out of the snapshot
+     * may have been set on this fragment
+     *
+     * @param data
+     * @return combination of CHANGED_* flags
+     */
+    private int getChangesSinceAdopted(CaldroidData data) {
+        int changes = 0;
+        if (startDayOfWeek != data.getStartDayOfWeek()
+                || sixWeeksInCalendar != data.isSixWeeksInCalendar()
+                || squareTextViewCell != data.isSquareTextViewCell()) {
+            changes |= CHANGED_LAYOUT;
+        }
+        if (themeResource != data.getThemeResource()) {
+            changes |= CHANGED_THEME;
+        }
+        if (!backgroundForDateTimeMap.isEmpty()
+                || dateDecorations.getProvider() != null) {
+            changes |= CHANGED_DECORATIONS;
+        }
+        return changes;
+    }
+
     /**
      * To support faster init
      *
@@ -1201,6 +2134,48 @@ public class CaldroidFragment extends DialogFragment {
         return f;
     }
 
+    /**
+     * Resolved cell styles, themed inflaters and resources can depend on
+     * the configuration
+     */
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        CellStyle.clearCache();
+        ThemeCache.clearCache();
+        ResourceCache.clearCache();
+    }
+
+    /**
+     * Listen to time zone changes while the calendar is visible. Date
+     * conversions cache the time zone, and today may be another day
+     */
+    @Override
+    public void onStart() {
+        super.onStart();
+
+        // Time zone may have changed while the calendar was stopped
+        CalendarHelper.invalidateTimeZoneCache();
+
+        if (timeZoneChangedReceiver == null) {
+            timeZoneChangedReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    CalendarHelper.invalidateTimeZoneCache();
+                    refreshView();
+                }
+            };
+        }
+        getActivity().registerReceiver(timeZoneChangedReceiver,
+                new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+    }
+
+    @Override
+    public void onStop() {
+        getActivity().unregisterReceiver(timeZoneChangedReceiver);
+        super.onStop();
+    }
+
     /**
      * Below code fixed the issue viewpager disappears in dialog mode on
      * orientation change
@@ -1214,20 +2189,108 @@ public class CaldroidFragment extends DialogFragment {
         if (getDialog() != null && getRetainInstance()) {
             getDialog().setDismissMessage(null);
         }
+
+        // Stop background work of the views
+        if (monthPrefetcher != null) {
+            monthPrefetcher.shutdown();
+            monthPrefetcher = null;
+        }
         super.onDestroyView();
     }
 
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // Take the retained data now, it is kept until the view is created.
+        // A fragment on the back stack only creates its view when popped
+        Bundle args = getArguments();
+        if (args != null && args != loadedArguments) {
+            long token = args.getLong(_RETAINED_STATE, 0);
+            CaldroidData data = token == 0 ? null : RetainedCaldroidStates.take(token);
+            if (data != null) {
+                retainedData = data;
+                retainedArguments = args;
+            }
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        // The state retained for rotation waits for the recreated fragment.
+        // It is not needed when the fragment is removed or the activity is
+        // closed
+        if (retainedStateToken != 0) {
+            if (isRemoving() || (getActivity() != null && getActivity().isFinishing())) {
+                RetainedCaldroidStates.discard(retainedStateToken);
+            } else {
+                RetainedCaldroidStates.orphan(retainedStateToken);
+            }
+            retainedStateToken = 0;
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Set the theme of Caldroid. If the views are already created, they are
+     * restyled in place with the new theme and the cells are rebound, no
+     * view is created again
+     *
+     * @param id theme, e.g. R.style.CaldroidDefaultDark
+     */
     public void setThemeResource(int id) {
+        if (id == themeResource) {
+            return;
+        }
         themeResource = id;
+        markChanged(CHANGED_THEME);
+
+        if (getView() != null) {
+            applyThemeToViews();
+            refreshView();
+        }
     }
 
     public int getThemeResource() {
         return themeResource;
     }
 
+    /**
+     * Apply the styles of themeResource to the views already created: the
+     * calendar layout, arrows, month title, weekdays and date grids. Cells
+     * are restyled by the adapters when refreshView() rebinds them.
+     * Subclasses that add their own themed views can override this method
+     */
+    protected void applyThemeToViews() {
+        ThemeCache.applyStyle(getView(), themeResource, R.attr.styleCaldroidViewLayout);
+        ThemeCache.applyStyle(leftArrowButton, themeResource, R.attr.styleCaldroidLeftArrow);
+        ThemeCache.applyStyle(rightArrowButton, themeResource, R.attr.styleCaldroidRightArrow);
+        ThemeCache.applyStyle(monthTitleTextView, themeResource, R.attr.styleCaldroidMonthName);
+
+        if (weekdayGridView != null
+                && weekdayGridView.getAdapter() instanceof WeekdayArrayAdapter) {
+            ((WeekdayArrayAdapter) weekdayGridView.getAdapter()).setThemeResource(themeResource);
+        }
+
+        if (fragments != null) {
+            for (DateGridFragment fragment : fragments) {
+                fragment.setThemeResource(themeResource);
+            }
+        }
+    }
+
+    /**
+     * Get an inflater that applies themeResource. Inflaters are cached per
+     * theme, calling this method again returns the same inflater as long as
+     * it is in use
+     *
+     * @param context
+     * @param origInflater
+     * @param themeResource
+     * @return
+     */
     public static LayoutInflater getThemeInflater(Context context, LayoutInflater origInflater, int themeResource) {
-        Context wrapped = new ContextThemeWrapper(context, themeResource);
-        return origInflater.cloneInContext(wrapped);
+        return ThemeCache.getInflater(context, origInflater, themeResource);
     }
 
     /**
@@ -1254,7 +2317,9 @@ public class CaldroidFragment extends DialogFragment {
         // for app that wants to change theme dynamically.
         getActivity().setTheme(themeResource);
 
-        View view = localInflater.inflate(R.layout.calendar_view, container, false);
+        View view = localInflater.inflate(verticalScroll
+                ? R.layout.calendar_vertical_view
+                : R.layout.calendar_view, container, false);
 
         // For the monthTitleTextView
         monthTitleTextView = (TextView) view
@@ -1291,8 +2356,17 @@ public class CaldroidFragment extends DialogFragment {
         WeekdayArrayAdapter weekdaysAdapter = getNewWeekdayAdapter(themeResource);
         weekdayGridView.setAdapter(weekdaysAdapter);
 
+        // Compute months around current month in background
+        if (prefetchMonths > 0) {
+            monthPrefetcher = new MonthPrefetcher(prefetchMonths);
+        }
+
         // Setup all the pages of date grid views. These pages are recycled
-        setupDateGridPages(view);
+        if (verticalScroll) {
+            setupMonthList(view);
+        } else {
+            setupDateGridPages(view);
+        }
 
         // Refresh view
         refreshView();
@@ -1339,8 +2413,8 @@ public class CaldroidFragment extends DialogFragment {
         CaldroidGridAdapter adapter0 = getNewDatesGridAdapter(
                 currentDateTime.getMonth(), currentDateTime.getYear());
 
-        // Setup dateInMonthsList
-        dateInMonthsList = adapter0.getDatetimeList();
+        // Setup currentMonthPage
+        currentMonthPage = adapter0.getMonthPage();
 
         // Next month
         DateTime nextDateTime = currentDateTime.plus(0, 1, 0, 0, 0, 0, 0,
@@ -1366,6 +2440,10 @@ public class CaldroidFragment extends DialogFragment {
         datePagerAdapters.add(adapter2);
         datePagerAdapters.add(adapter3);
 
+        for (CaldroidGridAdapter adapter : datePagerAdapters) {
+            adapter.setMonthPrefetcher(monthPrefetcher);
+        }
+
         // Set adapters to the pageChangeListener so it can refresh the adapter
         // when page change
         pageChangeListener.setCaldroidGridAdapters(datePagerAdapters);
@@ -1382,19 +2460,28 @@ public class CaldroidFragment extends DialogFragment {
         // Set if viewpager wrap around particular month or all months (6 rows)
         dateViewPager.setSixWeeksInCalendar(sixWeeksInCalendar);
 
-        // Set the numberOfDaysInMonth to dateViewPager so it can calculate the
+        // Set the current month page to dateViewPager so it can calculate the
         // height correctly
-        dateViewPager.setDatesInMonth(dateInMonthsList);
+        dateViewPager.setMonthPage(currentMonthPage);
 
         // MonthPagerAdapter actually provides 4 real fragments. The
         // InfinitePagerAdapter only recycles fragment provided by this
-        // MonthPagerAdapter
-        final MonthPagerAdapter pagerAdapter = new MonthPagerAdapter(
-                getChildFragmentManager());
+        // MonthPagerAdapter. MonthViewPagerAdapter provides the views of the
+        // same 4 fragments without attaching them
+        final PagerAdapter pagerAdapter;
+        if (viewBasedPages) {
+            MonthViewPagerAdapter monthViewPagerAdapter = new MonthViewPagerAdapter();
+            fragments = monthViewPagerAdapter.getFragments();
+            pagerAdapter = monthViewPagerAdapter;
+        } else {
+            MonthPagerAdapter monthPagerAdapter = new MonthPagerAdapter(
+                    getChildFragmentManager());
+            fragments = monthPagerAdapter.getFragments();
+            pagerAdapter = monthPagerAdapter;
+        }
 
         // Provide initial data to the fragments, before they are attached to
         // view.
-        fragments = pagerAdapter.getFragments();
 
         for (int i = 0; i < NUMBER_OF_PAGES; i++) {
             DateGridFragment dateGridFragment = fragments.get(i);
@@ -1404,6 +2491,8 @@ public class CaldroidFragment extends DialogFragment {
             dateGridFragment.setOnItemClickListener(getDateItemClickListener());
             dateGridFragment
                     .setOnItemLongClickListener(getDateItemLongClickListener());
+            dateGridFragment.setUseMonthView(canvasMonthView);
+            dateGridFragment.setOnCellClickListener(getDateCellClickListener());
         }
 
         // Setup InfinitePagerAdapter to wrap around MonthPagerAdapter
@@ -1417,6 +2506,58 @@ public class CaldroidFragment extends DialogFragment {
         dateViewPager.setOnPageChangeListener(pageChangeListener);
     }
 
+    /**
+     * Setup the month list of vertical scroll mode. Rows are recycled by
+     * RecyclerView, so scrolling does not inflate views or create fragments
+     *
+     * @param view
+     */
+    private void setupMonthList(View view) {
+        monthListAdapter = new MonthListAdapter(this, month, year);
+
+        monthLayoutManager = new LinearLayoutManager(getActivity(),
+                LinearLayoutManager.VERTICAL, false);
+
+        monthRecyclerView = (RecyclerView) view
+                .findViewById(R.id.months_recycler_view);
+        monthRecyclerView.setLayoutManager(monthLayoutManager);
+        monthRecyclerView.setHasFixedSize(true);
+        monthRecyclerView.setAdapter(monthListAdapter);
+        monthLayoutManager.scrollToPositionWithOffset(
+                monthListAdapter.getPosition(month, year), 0);
+
+        // Update month and year to the first visible month
+        monthRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int position = monthLayoutManager.findFirstVisibleItemPosition();
+                if (position == RecyclerView.NO_POSITION) {
+                    return;
+                }
+
+                int firstMonth = monthListAdapter.getMonth(position);
+                int firstYear = monthListAdapter.getYear(position);
+                if (firstMonth == month && firstYear == year) {
+                    return;
+                }
+
+                // Rows are bound with the current data when they scroll in,
+                // so only the title needs to be refreshed. Refreshing the
+                // adapter is not allowed while RecyclerView is scrolling
+                prefetchDirection = dy < 0 ? -1 : 1;
+                month = firstMonth;
+                year = firstYear;
+
+                if (caldroidListener != null) {
+                    caldroidListener.onChangeMonth(month, year);
+                }
+
+                refreshMonthTitleTextView();
+                prefetchAroundCurrentMonth();
+            }
+        });
+    }
+
     /**
      * To display the week day title
      *
@@ -1589,6 +2730,10 @@ public class CaldroidFragment extends DialogFragment {
          */
         @Override
         public void onPageSelected(int position) {
+            if (position != currentPage) {
+                prefetchDirection = position > currentPage ? 1 : -1;
+            }
+
             refreshAdapters(position);
 
             // Update current date time of the selected page
@@ -1598,9 +2743,12 @@ public class CaldroidFragment extends DialogFragment {
             CaldroidGridAdapter currentAdapter = caldroidGridAdapters
                     .get(position % CaldroidFragment.NUMBER_OF_PAGES);
 
-            // Refresh dateInMonthsList
-            dateInMonthsList.clear();
-            dateInMonthsList.addAll(currentAdapter.getDatetimeList());
+            // Refresh currentMonthPage
+            currentMonthPage = currentAdapter.getMonthPage();
+            dateViewPager.setMonthPage(currentMonthPage);
+
+            // Compute the following months before user swipes to them
+            prefetchAroundCurrentMonth();
         }
 
     }
@@ -1609,6 +2757,11 @@ public class CaldroidFragment extends DialogFragment {
     public void onDetach() {
         super.onDetach();
 
+        // Child FragmentManager is only used by fragment pages
+        if (viewBasedPages || verticalScroll) {
+            return;
+        }
+
         try {
             Field childFragmentManager = Fragment.class
                     .getDeclaredField("mChildFragmentManager");
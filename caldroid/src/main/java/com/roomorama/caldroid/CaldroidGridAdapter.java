@@ -3,11 +3,9 @@ package com.roomorama.caldroid;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.content.res.Resources;
-import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.util.TypedValue;
-import android.view.ContextThemeWrapper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -18,7 +16,6 @@ import com.caldroid.R;
 
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 
 import hirondelle.date4j.DateTime;
@@ -29,21 +26,66 @@ import hirondelle.date4j.DateTime;
  * @author thomasdao
  */
 public class CaldroidGridAdapter extends BaseAdapter {
+    /**
+     * Flags of a cell state, see {@link #getCellState(int)}
+     */
+    public static final int
+            CELL_TODAY = 1,
+            CELL_PREV_NEXT_MONTH = 1 << 1,
+            CELL_DISABLED = 1 << 2,
+            CELL_SELECTED = 1 << 3,
+            CELL_OUT_OF_RANGE = 1 << 4,
+            CELL_DECORATED = 1 << 5;
+
+    /**
+     * All dates displayed in this page, as epoch days
+     */
+    protected MonthPage monthPage;
+
+    /**
+     * DateTime view of monthPage, only created when client asks for it. Use
+     * {@link #getDatetimeList()} to access it
+     */
     protected ArrayList<DateTime> datetimeList;
+
+    /**
+     * State of each cell of monthPage, combination of CELL_* flags. Computed
+     * once when the page or its parameters change, use
+     * {@link #getCellState(int)} to access it
+     */
+    private byte[] cellStates;
+
+    /**
+     * Custom background and text color of each cell of monthPage, looked up
+     * once per page. Use {@link #getCellDecorations()} to access it
+     */
+    private CellDecorations cellDecorations;
+
+    /**
+     * Whether a subclass overrides the deprecated
+     * setCustomResources(DateTime, View, TextView), null until checked
+     */
+    private Boolean overridesDateTimeCustomResources;
+
+    /**
+     * Provides cell states computed in background, can be null
+     */
+    protected MonthPrefetcher monthPrefetcher;
     protected int month;
     protected int year;
     protected Context context;
-    protected ArrayList<DateTime> disableDates;
-    protected ArrayList<DateTime> selectedDates;
 
-    // Use internally, to make the search for date faster instead of using
-    // indexOf methods on ArrayList
-    protected Map<DateTime, Integer> disableDatesMap = new HashMap<>();
-    protected Map<DateTime, Integer> selectedDatesMap = new HashMap<>();
+    // Disabled and selected dates, searched by epoch day. Shared with
+    // caldroidDataSnapshot, do not modify
+    protected DateBitSet disableDateSet;
+    protected DateBitSet selectedDateSet;
 
     protected DateTime minDateTime;
     protected DateTime maxDateTime;
     protected DateTime today;
+    protected int todayEpochDay;
+    protected int minEpochDay;
+    protected int maxEpochDay;
     protected int startDayOfWeek;
     protected boolean sixWeeksInCalendar;
     protected boolean squareTextViewCell;
@@ -52,11 +94,19 @@ public class CaldroidGridAdapter extends BaseAdapter {
 
     protected int defaultCellBackgroundRes = -1;
     protected ColorStateList defaultTextColorRes;
+    protected CellStyle cellStyle;
 
     /**
-     * caldroidData belongs to Caldroid
+     * caldroidData belongs to Caldroid. Map view of caldroidDataSnapshot,
+     * kept for subclasses that read data by key
      */
     protected Map<String, Object> caldroidData;
+
+    /**
+     * Typed snapshot of caldroidData, shared with CaldroidFragment and other
+     * adapters
+     */
+    protected CaldroidData caldroidDataSnapshot;
     /**
      * extraData belongs to client
      */
@@ -67,12 +117,91 @@ public class CaldroidGridAdapter extends BaseAdapter {
     public void setAdapterDateTime(DateTime dateTime) {
         this.month = dateTime.getMonth();
         this.year = dateTime.getYear();
-        this.datetimeList = CalendarHelper.getFullWeeks(this.month, this.year,
-                startDayOfWeek, sixWeeksInCalendar);
+        setMonthPage(CalendarHelper.getMonthPage(this.month, this.year,
+                startDayOfWeek, sixWeeksInCalendar));
+    }
+
+    private void setMonthPage(MonthPage monthPage) {
+        this.monthPage = monthPage;
+        this.datetimeList = null;
+        this.cellStates = null;
+        this.cellDecorations = null;
+    }
+
+    /**
+     * Get state of the cell at position, a combination of CELL_* flags. The
+     * states of all cells are computed once per page, so this method does no
+     * date math
+     *
+     * @param position
+     * @return
+     */
+    public int getCellState(int position) {
+        if (cellStates == null) {
+            // Use the states computed in background if available
+            if (monthPrefetcher != null) {
+                cellStates = monthPrefetcher.getCellStates(monthPage,
+                        caldroidDataSnapshot, getTodayEpochDay());
+            }
+            if (cellStates == null) {
+                cellStates = caldroidDataSnapshot.computeCellStates(monthPage,
+                        getTodayEpochDay());
+            }
+        }
+        return cellStates[position];
+    }
+
+    /**
+     * Get the custom backgrounds and text colors of the cells of this page.
+     * Decoration maps are looked up and colors resolved once per page, when a
+     * decorated cell is first bound
+     *
+     * @return
+     */
+    public CellDecorations getCellDecorations() {
+        if (cellDecorations == null) {
+            getCellState(0);
+            cellDecorations = CellDecorations.compute(resources,
+                    caldroidDataSnapshot, monthPage, cellStates);
+        }
+        return cellDecorations;
+    }
+
+    /**
+     * Check if the cell at position is disabled or outside of min/max dates
+     *
+     * @param position
+     * @return
+     */
+    public boolean isCellDisabled(int position) {
+        return (getCellState(position) & (CELL_DISABLED | CELL_OUT_OF_RANGE)) != 0;
+    }
+
+    /**
+     * Get the date of the cell at position, without creating a DateTime
+     *
+     * @param position
+     * @return epoch day, see {@link CaldroidDate}
+     */
+    public int getEpochDay(int position) {
+        return monthPage.getEpochDay(position);
     }
 
     // GETTERS AND SETTERS
+    public MonthPage getMonthPage() {
+        return monthPage;
+    }
+
+    /**
+     * DateTime of all dates in this page. The list is created on first
+     * access, prefer {@link #getMonthPage()} when epoch days are enough
+     *
+     * @return
+     */
     public ArrayList<DateTime> getDatetimeList() {
+        if (datetimeList == null) {
+            datetimeList = monthPage.toDateTimeList();
+        }
         return datetimeList;
     }
 
@@ -80,6 +209,11 @@ public class CaldroidGridAdapter extends BaseAdapter {
         return minDateTime;
     }
 
+    /**
+     * @deprecated cell states are computed from CaldroidData, this field is
+     * not used anymore. Use CaldroidFragment.setMinDate() then refreshView()
+     */
+    @Deprecated
     public void setMinDateTime(DateTime minDateTime) {
         this.minDateTime = minDateTime;
     }
@@ -88,24 +222,92 @@ public class CaldroidGridAdapter extends BaseAdapter {
         return maxDateTime;
     }
 
+    /**
+     * @deprecated cell states are computed from CaldroidData, this field is
+     * not used anymore. Use CaldroidFragment.setMaxDate() then refreshView()
+     */
+    @Deprecated
     public void setMaxDateTime(DateTime maxDateTime) {
         this.maxDateTime = maxDateTime;
     }
 
+    /**
+     * List of all disabled dates, created on first call. Prefer
+     * getDisableDateSet()
+     *
+     * @return
+     */
     public ArrayList<DateTime> getDisableDates() {
-        return disableDates;
+        return caldroidDataSnapshot.getDisableDates();
     }
 
-    public void setDisableDates(ArrayList<DateTime> disableDates) {
-        this.disableDates = disableDates;
+    /**
+     * List of all selected dates, created on first call. Prefer
+     * getSelectedDateSet()
+     *
+     * @return
+     */
+    public ArrayList<DateTime> getSelectedDates() {
+        return caldroidDataSnapshot.getSelectedDates();
     }
 
-    public ArrayList<DateTime> getSelectedDates() {
-        return selectedDates;
+    /**
+     * Replace the disabled dates of this adapter only, until the fragment
+     * sets its next snapshot
+     *
+     * @param disableDates
+     * @deprecated use CaldroidFragment.setDisableDates() then refreshView()
+     */
+    @Deprecated
+    public void setDisableDates(ArrayList<DateTime> disableDates) {
+        setDates(CaldroidFragment.CHANGED_DISABLE_DATES,
+                DateBitSet.fromDateTimes(disableDates),
+                caldroidDataSnapshot.getSelectedDateSet());
     }
 
+    /**
+     * Replace the selected dates of this adapter only, until the fragment
+     * sets its next snapshot
+     *
+     * @param selectedDates
+     * @deprecated use CaldroidFragment.setSelectedDates() then refreshView()
+     */
+    @Deprecated
     public void setSelectedDates(ArrayList<DateTime> selectedDates) {
-        this.selectedDates = selectedDates;
+        setDates(CaldroidFragment.CHANGED_SELECTED_DATES,
+                caldroidDataSnapshot.getDisableDateSet(),
+                DateBitSet.fromDateTimes(selectedDates));
+    }
+
+    private void setDates(int changes, DateBitSet disableDateSet,
+                          DateBitSet selectedDateSet) {
+        CaldroidData data = caldroidDataSnapshot;
+        setCaldroidData(new CaldroidData(data, changes, disableDateSet,
+                data.getDisableDateRules(), selectedDateSet,
+                data.getMinDateTime(), data.getMaxDateTime(),
+                data.getStartDayOfWeek(), data.isSixWeeksInCalendar(),
+                data.isSquareTextViewCell(), data.getThemeResource(),
+                data.getBackgroundForDateTimeMap(),
+                data.getTextColorForDateTimeMap(), data.getDateDecorations()));
+    }
+
+    public DateBitSet getDisableDateSet() {
+        return disableDateSet;
+    }
+
+    public DateBitSet getSelectedDateSet() {
+        return selectedDateSet;
+    }
+
+    /**
+     * Dates the user can pick in this adapter: min / max dates, disabled
+     * dates and rules. Cells are drawn and clicks are accepted with these
+     * constraints, custom adapters should use them too
+     *
+     * @return
+     */
+    public DateConstraints getDateConstraints() {
+        return caldroidDataSnapshot.getDateConstraints();
     }
 
     public int getThemeResource() {
@@ -116,11 +318,70 @@ public class CaldroidGridAdapter extends BaseAdapter {
         return caldroidData;
     }
 
+    public CaldroidData getCaldroidDataSnapshot() {
+        return caldroidDataSnapshot;
+    }
+
     public void setCaldroidData(Map<String, Object> caldroidData) {
-        this.caldroidData = caldroidData;
+        setCaldroidData(CaldroidData.fromMap(caldroidData));
+    }
+
+    /**
+     * Set caldroidData, only rebuild the parameters that have changed since
+     * the current snapshot. Does nothing if the snapshot is the same
+     *
+     * @param caldroidDataSnapshot
+     */
+    public void setCaldroidData(CaldroidData caldroidDataSnapshot) {
+        int changes = caldroidDataSnapshot.getChanges(this.caldroidDataSnapshot);
+        if (changes == 0) {
+            return;
+        }
+
+        this.caldroidDataSnapshot = caldroidDataSnapshot;
+        this.caldroidData = caldroidDataSnapshot.toMap();
 
         // Reset parameters
-        populateFromCaldroidData();
+        populateFromCaldroidData(changes);
+    }
+
+    /**
+     * Set new snapshot, and find the cells whose state changed. Only used
+     * when dates changed, any other change needs a full refresh
+     *
+     * @param caldroidDataSnapshot
+     * @return positions of the cells whose state changed, or null if all
+     * cells must be refreshed
+     */
+    public int[] updateCaldroidData(CaldroidData caldroidDataSnapshot) {
+        int changes = caldroidDataSnapshot.getChanges(this.caldroidDataSnapshot);
+        if (changes == 0) {
+            return new int[0];
+        }
+
+        byte[] oldCellStates = cellStates;
+        setCaldroidData(caldroidDataSnapshot);
+
+        int dateChanges = CaldroidFragment.CHANGED_SELECTED_DATES
+                | CaldroidFragment.CHANGED_DISABLE_DATES;
+        if (oldCellStates == null || (changes & ~dateChanges) != 0) {
+            return null;
+        }
+
+        // Compute new states
+        getCellState(0);
+
+        int count = 0;
+        int[] positions = new int[cellStates.length];
+        for (int position = 0; position < cellStates.length; position++) {
+            if (cellStates[position] != oldCellStates[position]) {
+                positions[count++] = position;
+            }
+        }
+
+        int[] changedPositions = new int[count];
+        System.arraycopy(positions, 0, changedPositions, 0, count);
+        return changedPositions;
     }
 
     public Map<String, Object> getExtraData() {
@@ -131,6 +392,14 @@ public class CaldroidGridAdapter extends BaseAdapter {
         this.extraData = extraData;
     }
 
+    public MonthPrefetcher getMonthPrefetcher() {
+        return monthPrefetcher;
+    }
+
+    public void setMonthPrefetcher(MonthPrefetcher monthPrefetcher) {
+        this.monthPrefetcher = monthPrefetcher;
+    }
+
     /**
      * Constructor
      *
@@ -143,130 +412,222 @@ public class CaldroidGridAdapter extends BaseAdapter {
     public CaldroidGridAdapter(Context context, int month, int year,
                                Map<String, Object> caldroidData,
                                Map<String, Object> extraData) {
+        this(context, month, year, CaldroidData.fromMap(caldroidData),
+                extraData);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param context
+     * @param month
+     * @param year
+     * @param caldroidDataSnapshot
+     * @param extraData
+     */
+    public CaldroidGridAdapter(Context context, int month, int year,
+                               CaldroidData caldroidDataSnapshot,
+                               Map<String, Object> extraData) {
         super();
         this.month = month;
         this.year = year;
         this.context = context;
-        this.caldroidData = caldroidData;
+        this.caldroidDataSnapshot = caldroidDataSnapshot;
+        this.caldroidData = caldroidDataSnapshot.toMap();
         this.extraData = extraData;
         this.resources = context.getResources();
 
         // Get data from caldroidData
-        populateFromCaldroidData();
-
-	    LayoutInflater inflater = (LayoutInflater) context
-			    .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-	    localInflater = CaldroidFragment.getThemeInflater(context, inflater, themeResource);
+        populateFromCaldroidData(CaldroidFragment.CHANGED_ALL);
     }
 
     /**
-     * Retrieve internal parameters from caldroid data
+     * Retrieve internal parameters from caldroid data. Only the parameters
+     * flagged in changes are rebuilt
+     *
+     * @param changes combination of CaldroidFragment.CHANGED_* flags
      */
-    @SuppressWarnings("unchecked")
-    private void populateFromCaldroidData() {
-        disableDates = (ArrayList<DateTime>) caldroidData
-                .get(CaldroidFragment.DISABLE_DATES);
-        if (disableDates != null) {
-            disableDatesMap.clear();
-            for (DateTime dateTime : disableDates) {
-                disableDatesMap.put(dateTime, 1);
-            }
+    private void populateFromCaldroidData(int changes) {
+        CaldroidData data = caldroidDataSnapshot;
+
+        if ((changes & CaldroidFragment.CHANGED_DISABLE_DATES) != 0) {
+            disableDateSet = data.getDisableDateSet();
         }
 
-        selectedDates = (ArrayList<DateTime>) caldroidData
-                .get(CaldroidFragment.SELECTED_DATES);
-        if (selectedDates != null) {
-            selectedDatesMap.clear();
-            for (DateTime dateTime : selectedDates) {
-                selectedDatesMap.put(dateTime, 1);
-            }
+        if ((changes & CaldroidFragment.CHANGED_SELECTED_DATES) != 0) {
+            selectedDateSet = data.getSelectedDateSet();
         }
 
-        minDateTime = (DateTime) caldroidData
-                .get(CaldroidFragment._MIN_DATE_TIME);
-        maxDateTime = (DateTime) caldroidData
-                .get(CaldroidFragment._MAX_DATE_TIME);
-        startDayOfWeek = (Integer) caldroidData
-                .get(CaldroidFragment.START_DAY_OF_WEEK);
-        sixWeeksInCalendar = (Boolean) caldroidData
-                .get(CaldroidFragment.SIX_WEEKS_IN_CALENDAR);
-        squareTextViewCell = (Boolean) caldroidData
-                .get(CaldroidFragment.SQUARE_TEXT_VIEW_CELL);
+        if ((changes & CaldroidFragment.CHANGED_MIN_MAX_DATES) != 0) {
+            minDateTime = data.getMinDateTime();
+            maxDateTime = data.getMaxDateTime();
+            minEpochDay = data.getMinEpochDay();
+            maxEpochDay = data.getMaxEpochDay();
+        }
 
-        // Get theme
-        themeResource = (Integer) caldroidData
-                .get(CaldroidFragment.THEME_RESOURCE);
+        if ((changes & CaldroidFragment.CHANGED_LAYOUT) != 0) {
+            startDayOfWeek = data.getStartDayOfWeek();
+            sixWeeksInCalendar = data.isSixWeeksInCalendar();
+            squareTextViewCell = data.isSquareTextViewCell();
 
-        this.datetimeList = CalendarHelper.getFullWeeks(this.month, this.year,
-                startDayOfWeek, sixWeeksInCalendar);
+            setMonthPage(CalendarHelper.getMonthPage(this.month, this.year,
+                    startDayOfWeek, sixWeeksInCalendar));
+        }
+
+        if ((changes & CaldroidFragment.CHANGED_THEME) != 0) {
+            // Get theme. Inflaters are cached per theme, so switching theme
+            // does not create a new one each time
+            themeResource = data.getThemeResource();
+            LayoutInflater inflater = (LayoutInflater) context
+                    .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+            localInflater = CaldroidFragment.getThemeInflater(context, inflater, themeResource);
+        }
+
+        // Cell states depend on dates and decorations
+        cellStates = null;
+
+        if ((changes & CaldroidFragment.CHANGED_DECORATIONS) != 0) {
+            cellDecorations = null;
+        }
 
-        getDefaultResources();
+        // Cell style depends on both the theme and the type of cell
+        if ((changes & (CaldroidFragment.CHANGED_THEME | CaldroidFragment.CHANGED_LAYOUT)) != 0) {
+            getDefaultResources();
+        }
     }
 
     // This method retrieve default resources for background and text color,
-    // based on the Caldroid theme
+    // based on the Caldroid theme. Styles are resolved once per theme, see
+    // CellStyle
     private void getDefaultResources() {
-        Context wrapped = new ContextThemeWrapper(context, themeResource);
-
-        // Get style of normal cell or square cell in the theme
-        Resources.Theme theme = wrapped.getTheme();
-        TypedValue styleCellVal = new TypedValue();
-        if (squareTextViewCell) {
-            theme.resolveAttribute(R.attr.styleCaldroidSquareCell, styleCellVal, true);
-        } else {
-            theme.resolveAttribute(R.attr.styleCaldroidNormalCell, styleCellVal, true);
-        }
+        cellStyle = CellStyle.get(context, themeResource, squareTextViewCell);
+        defaultCellBackgroundRes = cellStyle.getBackgroundResource();
+        defaultTextColorRes = cellStyle.getTextColors();
+    }
 
-        // Get default background of cell
-        TypedArray typedArray = wrapped.obtainStyledAttributes(styleCellVal.data, R.styleable.Cell);
-        defaultCellBackgroundRes = typedArray.getResourceId(R.styleable.Cell_android_background, -1);
-        defaultTextColorRes = typedArray.getColorStateList(R.styleable.Cell_android_textColor);
-        typedArray.recycle();
+    /**
+     * Default style of the cells, from the theme
+     *
+     * @return
+     */
+    public CellStyle getCellStyle() {
+        return cellStyle;
     }
 
     public void updateToday() {
         today = CalendarHelper.convertDateToDateTime(new Date());
+
+        int epochDay = CalendarHelper.convertDateTimeToEpochDay(today);
+        if (epochDay != todayEpochDay) {
+            todayEpochDay = epochDay;
+            cellStates = null;
+        }
     }
 
     protected DateTime getToday() {
         if (today == null) {
-            today = CalendarHelper.convertDateToDateTime(new Date());
+            updateToday();
         }
         return today;
     }
 
-    @SuppressWarnings("unchecked")
-    protected void setCustomResources(DateTime dateTime, View backgroundView,
+    protected int getTodayEpochDay() {
+        if (today == null) {
+            updateToday();
+        }
+        return todayEpochDay;
+    }
+
+    /**
+     * Set custom background and text color of the cell at position, from
+     * {@link #getCellDecorations()}
+     *
+     * @param position
+     * @param backgroundView
+     * @param textView
+     */
+    protected void setCustomResources(int position, View backgroundView,
                                       TextView textView) {
-        // Set custom background resource
-        Map<DateTime, Drawable> backgroundForDateTimeMap = (Map<DateTime, Drawable>) caldroidData
-                .get(CaldroidFragment._BACKGROUND_FOR_DATETIME_MAP);
-        if (backgroundForDateTimeMap != null) {
-            // Get background resource for the dateTime
-            Drawable drawable = backgroundForDateTimeMap.get(dateTime);
-
-            // Set it
-            if (drawable != null) {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-                    backgroundView.setBackground(drawable);
-                } else {
-                    backgroundView.setBackgroundDrawable(drawable);
-                }
+        CellDecorations decorations = getCellDecorations();
+
+        // Set custom background resource. Each view gets its own drawable
+        // of the style, so states of cells do not interfere
+        Drawable drawable = decorations.getBackground(position);
+        if (drawable != null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                backgroundView.setBackground(drawable);
+            } else {
+                backgroundView.setBackgroundDrawable(drawable);
             }
+        } else if (decorations.getBackgroundResource(position) != 0) {
+            backgroundView.setBackgroundResource(decorations.getBackgroundResource(position));
         }
 
         // Set custom text color
-        Map<DateTime, Integer> textColorForDateTimeMap = (Map<DateTime, Integer>) caldroidData
-                .get(CaldroidFragment._TEXT_COLOR_FOR_DATETIME_MAP);
-        if (textColorForDateTimeMap != null) {
-            // Get textColor for the dateTime
-            Integer textColorResource = textColorForDateTimeMap.get(dateTime);
-
-            // Set it
-            if (textColorResource != null) {
-                textView.setTextColor(resources.getColor(textColorResource));
+        if (decorations.hasTextColor(position)) {
+            textView.setTextColor(decorations.getTextColor(position));
+        }
+    }
+
+    /**
+     * Set custom background and text color of a date
+     *
+     * @deprecated override {@link #setCustomResources(int, View, TextView)}
+     * instead, which does not look up the maps on each bind. customizeTextView()
+     * still calls this method for every cell if a subclass overrides it
+     */
+    @Deprecated
+    protected void setCustomResources(DateTime dateTime, View backgroundView,
+                                      TextView textView) {
+        int position = monthPage.indexOf(CalendarHelper.convertDateTimeToEpochDay(dateTime));
+        if (position >= 0) {
+            setCustomResources(position, backgroundView, textView);
+        }
+    }
+
+    /**
+     * Check once if a subclass overrides the deprecated
+     * setCustomResources(DateTime, View, TextView), so it is still called
+     *
+     * @return
+     */
+    private boolean overridesDateTimeCustomResources() {
+        if (overridesDateTimeCustomResources == null) {
+            boolean overrides = false;
+            for (Class<?> c = getClass(); c != CaldroidGridAdapter.class;
+                 c = c.getSuperclass()) {
+                try {
+                    c.getDeclaredMethod("setCustomResources", DateTime.class,
+                            View.class, TextView.class);
+                    overrides = true;
+                    break;
+                } catch (NoSuchMethodException e) {
+                    // Not declared by this class, check its superclass
+                }
             }
+            overridesDateTimeCustomResources = overrides;
         }
+        return overridesDateTimeCustomResources;
+    }
+
+    /**
+     * Set text size, text style and padding of the cell style, if the cell
+     * was created or last bound with another theme. Background and text
+     * color are reset on every bind
+     *
+     * @param cellView
+     */
+    private void applyCellStyle(CellView cellView) {
+        if (cellView.cellStyle == cellStyle) {
+            return;
+        }
+        cellView.cellStyle = cellStyle;
+
+        cellView.setTextSize(TypedValue.COMPLEX_UNIT_PX, cellStyle.getTextSize());
+        cellView.setTypeface(null, cellStyle.getTextStyle());
+
+        int padding = cellStyle.getPadding();
+        cellView.setPadding(padding, padding, padding, padding);
     }
 
     private void resetCustomResources(CellView cellView) {
@@ -290,42 +651,45 @@ public class CaldroidGridAdapter extends BaseAdapter {
         int bottomPadding = cellView.getPaddingBottom();
         int rightPadding = cellView.getPaddingRight();
 
-        // Get dateTime of this cell
-        DateTime dateTime = this.datetimeList.get(position);
+        // Get state of this cell, computed once per page
+        int cellState = getCellState(position);
 
         cellView.resetCustomStates();
         resetCustomResources(cellView);
 
-        if (dateTime.equals(getToday())) {
+        if ((cellState & CELL_TODAY) != 0) {
             cellView.addCustomState(CellView.STATE_TODAY);
         }
 
         // Set color of the dates in previous / next month
-        if (dateTime.getMonth() != month) {
+        if ((cellState & CELL_PREV_NEXT_MONTH) != 0) {
             cellView.addCustomState(CellView.STATE_PREV_NEXT_MONTH);
         }
 
         // Customize for disabled dates and date outside min/max dates
-        if ((minDateTime != null && dateTime.lt(minDateTime))
-                || (maxDateTime != null && dateTime.gt(maxDateTime))
-                || (disableDates != null && disableDatesMap
-                .containsKey(dateTime))) {
-
+        if ((cellState & (CELL_DISABLED | CELL_OUT_OF_RANGE)) != 0) {
             cellView.addCustomState(CellView.STATE_DISABLED);
         }
 
         // Customize for selected dates
-        if (selectedDates != null && selectedDatesMap.containsKey(dateTime)) {
+        if ((cellState & CELL_SELECTED) != 0) {
             cellView.addCustomState(CellView.STATE_SELECTED);
         }
 
-        cellView.refreshDrawableState();
+        cellView.refreshCustomStates();
 
         // Set text
-        cellView.setText(String.valueOf(dateTime.getDay()));
-
-        // Set custom color if required
-        setCustomResources(dateTime, cellView, cellView);
+        cellView.setText(String.valueOf(monthPage.getDay(position)));
+
+        // Set custom color if required. An override of the deprecated
+        // DateTime version may decorate from its own data, so it is called
+        // for every cell, like before
+        if (overridesDateTimeCustomResources()) {
+            setCustomResources(monthPage.getDateTime(position), cellView,
+                    cellView);
+        } else if ((cellState & CELL_DECORATED) != 0) {
+            setCustomResources(position, cellView, cellView);
+        }
 
         // Somehow after setBackgroundResource, the padding collapse.
         // This is to recover the padding
@@ -335,12 +699,12 @@ public class CaldroidGridAdapter extends BaseAdapter {
 
     @Override
     public int getCount() {
-        return this.datetimeList.size();
+        return this.monthPage.size();
     }
 
     @Override
     public Object getItem(int position) {
-        return datetimeList.get(position);
+        return getDatetimeList().get(position);
     }
 
     @Override
@@ -357,8 +721,12 @@ public class CaldroidGridAdapter extends BaseAdapter {
 		if (convertView == null) {
 			final int squareDateCellResource = squareTextViewCell ? R.layout.square_date_cell : R.layout.normal_date_cell;
 			cellView = (CellView) localInflater.inflate(squareDateCellResource, parent, false);
+
+			// Inflated with the current theme
+			cellView.cellStyle = cellStyle;
 		} else {
 			cellView = (CellView) convertView;
+			applyCellStyle(cellView);
 		}
 
 		customizeTextView(position, cellView);
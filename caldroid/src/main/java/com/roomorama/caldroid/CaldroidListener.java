@@ -22,6 +22,18 @@ public abstract class CaldroidListener {
      */
     public abstract void onSelectDate(Date date, View view);
 
+    /**
+     * Inform client user has clicked on a date. Calls
+     * {@link #onSelectDate(Date, View)} by default, override it to receive
+     * the date without creating a Date
+     *
+     * @param epochDay see {@link CaldroidDate}
+     * @param view
+     */
+    public void onSelectDate(int epochDay, View view) {
+        onSelectDate(CaldroidDate.toDate(epochDay), view);
+    }
+
 
     /**
      * Inform client user has long clicked on a date
@@ -33,6 +45,18 @@ public abstract class CaldroidListener {
         // Do nothing
     }
 
+    /**
+     * Inform client user has long clicked on a date. Calls
+     * {@link #onLongClickDate(Date, View)} by default, override it to receive
+     * the date without creating a Date
+     *
+     * @param epochDay see {@link CaldroidDate}
+     * @param view
+     */
+    public void onLongClickDate(int epochDay, View view) {
+        onLongClickDate(CaldroidDate.toDate(epochDay), view);
+    }
+
 
     /**
      * Inform client that calendar has changed month
@@ -3,9 +3,11 @@ package com.roomorama.caldroid;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 
 import hirondelle.date4j.DateTime;
 
@@ -16,10 +18,76 @@ import hirondelle.date4j.DateTime;
  */
 public class CalendarHelper {
 
-    private static SimpleDateFormat yyyyMMddFormat;
+    /**
+     * Default date format of Caldroid
+     */
+    public static final String DEFAULT_DATE_FORMAT = "yyyy-MM-dd";
+
+    /**
+     * Returned by {@link #getEpochDayFromString(String, String)} when the
+     * string can not be parsed
+     */
+    public static final int INVALID_EPOCH_DAY = Integer.MIN_VALUE;
+
+    /**
+     * Epoch days of 0001-01-01 and 9999-12-31, the range of dates DateTime
+     * supports
+     */
+    public static final int MIN_EPOCH_DAY = -719162;
+    public static final int MAX_EPOCH_DAY = 2932896;
+
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000L;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    /**
+     * Maximum number of date formats kept by each thread
+     */
+    private static final int DATE_FORMAT_CACHE_SIZE = 8;
+
+    /**
+     * SimpleDateFormat is not thread-safe, so each thread keeps its own
+     * formatters, by pattern
+     */
+    private static final ThreadLocal<Map<String, SimpleDateFormat>> dateFormatCache
+            = new ThreadLocal<Map<String, SimpleDateFormat>>() {
+        @Override
+        protected Map<String, SimpleDateFormat> initialValue() {
+            return new LinkedHashMap<String, SimpleDateFormat>(
+                    DATE_FORMAT_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, SimpleDateFormat> eldest) {
+                    return size() > DATE_FORMAT_CACHE_SIZE;
+                }
+            };
+        }
+    };
+
+    /**
+     * Maximum number of month pages kept in monthPageCache
+     */
+    public static final int MONTH_PAGE_CACHE_SIZE = 48;
+
+    /**
+     * Recently used month pages, shared by all adapters and fragments. Month
+     * pages are immutable, so it is safe to share them
+     */
+    private static final Map<Long, MonthPage> monthPageCache = new LinkedHashMap<Long, MonthPage>(
+            MONTH_PAGE_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, MonthPage> eldest) {
+            return size() > MONTH_PAGE_CACHE_SIZE;
+        }
+    };
 
+    private static int monthPageCacheHitCount;
+    private static int monthPageCacheMissCount;
+
+    /**
+     * Kept for compatibility. Date formats are now created by each thread on
+     * first use, see {@link #getDateFormat(String)}
+     */
     public static void setup() {
-        yyyyMMddFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
     }
 
     /**
@@ -33,70 +101,334 @@ public class CalendarHelper {
      */
     public static ArrayList<DateTime> getFullWeeks(int month, int year,
                                                    int startDayOfWeek, boolean sixWeeksInCalendar) {
-        ArrayList<DateTime> datetimeList = new ArrayList<DateTime>();
+        return getMonthPage(month, year, startDayOfWeek, sixWeeksInCalendar)
+                .toDateTimeList();
+    }
 
-        DateTime firstDateOfMonth = new DateTime(year, month, 1, 0, 0, 0, 0);
-        DateTime lastDateOfMonth = firstDateOfMonth.plusDays(firstDateOfMonth
-                .getNumDaysInMonth() - 1);
+    /**
+     * Retrieve the month page for a given calendar month. The page holds the
+     * same dates as {@link #getFullWeeks(int, int, int, boolean)}, but as
+     * epoch days, without allocating any DateTime. Recently used pages are
+     * cached, so flipping between the same months does no date math
+     *
+     * @param month
+     * @param year
+     * @param startDayOfWeek : calendar can start from customized date instead of Sunday
+     * @param sixWeeksInCalendar
+     * @return
+     */
+    public static MonthPage getMonthPage(int month, int year,
+                                         int startDayOfWeek, boolean sixWeeksInCalendar) {
+        Long key = ((year * 12L + month) * 8 + startDayOfWeek) * 2
+                + (sixWeeksInCalendar ? 1 : 0);
 
-        // Add dates of first week from previous month
-        int weekdayOfFirstDate = firstDateOfMonth.getWeekDay();
+        synchronized (monthPageCache) {
+            MonthPage monthPage = monthPageCache.get(key);
+            if (monthPage != null) {
+                monthPageCacheHitCount++;
+                return monthPage;
+            }
+            monthPageCacheMissCount++;
+        }
 
-        // If weekdayOfFirstDate smaller than startDayOfWeek
-        // For e.g: weekdayFirstDate is Monday, startDayOfWeek is Tuesday
-        // increase the weekday of FirstDate because it's in the future
-        if (weekdayOfFirstDate < startDayOfWeek) {
-            weekdayOfFirstDate += 7;
+        MonthPage monthPage = computeMonthPage(month, year, startDayOfWeek,
+                sixWeeksInCalendar);
+        synchronized (monthPageCache) {
+            monthPageCache.put(key, monthPage);
         }
+        return monthPage;
+    }
 
-        while (weekdayOfFirstDate > 0) {
-            DateTime dateTime = firstDateOfMonth.minusDays(weekdayOfFirstDate
-                    - startDayOfWeek);
-            if (!dateTime.lt(firstDateOfMonth)) {
-                break;
-            }
+    /**
+     * Number of getMonthPage calls served from the cache
+     */
+    public static int getMonthPageCacheHitCount() {
+        synchronized (monthPageCache) {
+            return monthPageCacheHitCount;
+        }
+    }
 
-            datetimeList.add(dateTime);
-            weekdayOfFirstDate--;
+    /**
+     * Number of getMonthPage calls that had to compute the page
+     */
+    public static int getMonthPageCacheMissCount() {
+        synchronized (monthPageCache) {
+            return monthPageCacheMissCount;
         }
+    }
 
-        // Add dates of current month
-        for (int i = 0; i < lastDateOfMonth.getDay(); i++) {
-            datetimeList.add(firstDateOfMonth.plusDays(i));
+    /**
+     * Remove all month pages from the cache and reset the counters
+     */
+    public static void clearMonthPageCache() {
+        synchronized (monthPageCache) {
+            monthPageCache.clear();
+            monthPageCacheHitCount = 0;
+            monthPageCacheMissCount = 0;
         }
+    }
 
-        // Add dates of last week from next month
-        int endDayOfWeek = startDayOfWeek - 1;
+    private static MonthPage computeMonthPage(int month, int year,
+                                              int startDayOfWeek, boolean sixWeeksInCalendar) {
+        int firstEpochDayOfMonth = getEpochDay(year, month, 1);
+        int numDaysInMonth = getNumDaysInMonth(year, month);
 
-        if (endDayOfWeek == 0) {
-            endDayOfWeek = 7;
-        }
+        // Number of days of previous month shown in the first week
+        int leadingDays = (getWeekDayOfEpochDay(firstEpochDayOfMonth)
+                - startDayOfWeek + 7) % 7;
 
-        if (lastDateOfMonth.getWeekDay() != endDayOfWeek) {
-            int i = 1;
-            while (true) {
-                DateTime nextDay = lastDateOfMonth.plusDays(i);
-                datetimeList.add(nextDay);
-                i++;
-                if (nextDay.getWeekDay() == endDayOfWeek) {
-                    break;
-                }
-            }
-        }
+        // Number of days of next month shown in the last week
+        int endDayOfWeek = (startDayOfWeek + 5) % 7 + 1;
+        int trailingDays = (endDayOfWeek - getWeekDayOfEpochDay(
+                firstEpochDayOfMonth + numDaysInMonth - 1) + 7) % 7;
+
+        int size = leadingDays + numDaysInMonth + trailingDays;
 
         // Add more weeks to fill remaining rows
         if (sixWeeksInCalendar) {
-            int size = datetimeList.size();
-            int row = size / 7;
-            int numOfDays = (6 - row) * 7;
-            DateTime lastDateTime = datetimeList.get(size - 1);
-            for (int i = 1; i <= numOfDays; i++) {
-                DateTime nextDateTime = lastDateTime.plusDays(i);
-                datetimeList.add(nextDateTime);
-            }
+            size = 6 * 7;
+        }
+
+        int[] epochDays = new int[size];
+        int firstEpochDay = firstEpochDayOfMonth - leadingDays;
+        for (int i = 0; i < size; i++) {
+            epochDays[i] = firstEpochDay + i;
+        }
+
+        return new MonthPage(month, year, startDayOfWeek, sixWeeksInCalendar,
+                epochDays, leadingDays, numDaysInMonth,
+                getNumDaysInMonth(month == 1 ? year - 1 : year,
+                        month == 1 ? 12 : month - 1));
+    }
+
+    /**
+     * Get the number of days since 1970-01-01 of the given date. Month starts
+     * at 1, same as DateTime
+     *
+     * @param year
+     * @param month
+     * @param day
+     * @return
+     */
+    public static int getEpochDay(int year, int month, int day) {
+        // Shift the year to start in March, so the leap day is the last day
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * ((month + 9) % 12) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+                + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Get the epoch day of a DateTime, ignoring its time portion
+     *
+     * @param dateTime
+     * @return
+     */
+    public static int convertDateTimeToEpochDay(DateTime dateTime) {
+        return getEpochDay(dateTime.getYear(), dateTime.getMonth(),
+                dateTime.getDay());
+    }
+
+    /**
+     * Get the DateTime of an epoch day, with hour and min is 0
+     *
+     * @param epochDay
+     * @return
+     */
+    public static DateTime convertEpochDayToDateTime(int epochDay) {
+        int packedDate = convertEpochDayToPackedDate(epochDay);
+        return new DateTime(packedDate / 10000, packedDate / 100 % 100,
+                packedDate % 100, 0, 0, 0, 0);
+    }
+
+    /**
+     * Get the date of an epoch day packed as a yyyymmdd int, for e.g 20131224
+     *
+     * @param epochDay
+     * @return
+     */
+    public static int convertEpochDayToPackedDate(int epochDay) {
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+                - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra
+                - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 10000 + month * 100 + day;
+    }
+
+    /**
+     * Get the weekday of an epoch day, 1 is Sunday and 7 is Saturday, same as
+     * DateTime.getWeekDay()
+     *
+     * @param epochDay
+     * @return
+     */
+    public static int getWeekDayOfEpochDay(int epochDay) {
+        // 1970-01-01 is Thursday
+        int weekDay = (epochDay + 4) % 7;
+        if (weekDay < 0) {
+            weekDay += 7;
+        }
+        return weekDay + 1;
+    }
+
+    /**
+     * Get number of days in the month. Month starts at 1
+     *
+     * @param year
+     * @param month
+     * @return
+     */
+    public static int getNumDaysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean isLeapYear = (year % 4 == 0 && year % 100 != 0)
+                        || year % 400 == 0;
+                return isLeapYear ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Default time zone, cached because TimeZone.getDefault() returns a new
+     * copy on each call. Cleared by {@link #invalidateTimeZoneCache()}
+     */
+    private static volatile TimeZone defaultTimeZone;
+
+    /**
+     * Last UTC day whose zone offset does not change, see
+     * {@link #getZoneOffset(TimeZone, long)}
+     */
+    private static volatile ZoneOffsetDay zoneOffsetDay;
+
+    /**
+     * A UTC day of a time zone without offset transition
+     */
+    private static final class ZoneOffsetDay {
+        final TimeZone timeZone;
+        final long startMillis;
+        final int offset;
+
+        ZoneOffsetDay(TimeZone timeZone, long startMillis, int offset) {
+            this.timeZone = timeZone;
+            this.startMillis = startMillis;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Forget the cached default time zone and its offsets. Must be called when
+     * the default time zone changes, CaldroidFragment does it when it
+     * receives ACTION_TIMEZONE_CHANGED
+     */
+    public static void invalidateTimeZoneCache() {
+        defaultTimeZone = null;
+        zoneOffsetDay = null;
+    }
+
+    private static TimeZone getDefaultTimeZone() {
+        TimeZone timeZone = defaultTimeZone;
+        if (timeZone == null) {
+            timeZone = TimeZone.getDefault();
+            defaultTimeZone = timeZone;
         }
+        return timeZone;
+    }
+
+    /**
+     * Get the offset of a time zone from UTC at an instant. The offset of the
+     * last UTC day without transition is cached, so dates of the same day
+     * do not look up the zone rules again
+     *
+     * @param timeZone
+     * @param millis
+     * @return
+     */
+    private static int getZoneOffset(TimeZone timeZone, long millis) {
+        ZoneOffsetDay day = zoneOffsetDay;
+        if (day != null && day.timeZone == timeZone
+                && millis >= day.startMillis
+                && millis - day.startMillis < MILLIS_PER_DAY) {
+            return day.offset;
+        }
+
+        int offset = timeZone.getOffset(millis);
+
+        // Only cache days that start and end with the same offset. Zones do
+        // not change offset twice in a day
+        long startMillis = floorDiv(millis, MILLIS_PER_DAY) * MILLIS_PER_DAY;
+        if (timeZone.getOffset(startMillis) == offset
+                && timeZone.getOffset(startMillis + MILLIS_PER_DAY - 1) == offset) {
+            zoneOffsetDay = new ZoneOffsetDay(timeZone, startMillis, offset);
+        }
+        return offset;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
 
-        return datetimeList;
+    /**
+     * Get the epoch day of a Date in the default time zone, without Calendar
+     *
+     * @param date
+     * @return
+     */
+    public static int convertDateToEpochDay(Date date) {
+        long millis = date.getTime();
+        long localMillis = millis + getZoneOffset(getDefaultTimeZone(), millis);
+        return (int) floorDiv(localMillis, MILLIS_PER_DAY);
+    }
+
+    /**
+     * Get the Date of the start of a day in the default time zone, without
+     * Calendar. Gives the same result as Calendar across DST transitions: if
+     * midnight happens twice, the later one is returned, and if midnight is
+     * skipped, the first instant of the day is returned
+     *
+     * @param epochDay
+     * @return
+     */
+    public static Date convertEpochDayToDate(int epochDay) {
+        TimeZone timeZone = getDefaultTimeZone();
+        long localMillis = epochDay * MILLIS_PER_DAY;
+
+        // Offsets a day before and after midnight. They only differ if a
+        // transition happens around midnight
+        long rawMillis = localMillis - timeZone.getRawOffset();
+        int offsetBefore = getZoneOffset(timeZone, rawMillis - MILLIS_PER_DAY);
+        int offsetAfter = getZoneOffset(timeZone, rawMillis + MILLIS_PER_DAY);
+        if (offsetBefore == offsetAfter) {
+            return new Date(localMillis - offsetBefore);
+        }
+
+        long millisBefore = localMillis - offsetBefore;
+        long millisAfter = localMillis - offsetAfter;
+        boolean validBefore = getZoneOffset(timeZone, millisBefore) == offsetBefore;
+        boolean validAfter = getZoneOffset(timeZone, millisAfter) == offsetAfter;
+        if (validBefore != validAfter) {
+            return new Date(validBefore ? millisBefore : millisAfter);
+        }
+
+        // Midnight happens twice, or is skipped and the later instant is the
+        // transition
+        return new Date(Math.max(millisBefore, millisAfter));
     }
 
     /**
@@ -106,35 +438,95 @@ public class CalendarHelper {
      * @return
      */
     public static DateTime convertDateToDateTime(Date date) {
-        // Get year, javaMonth, date
-        Calendar calendar = Calendar.getInstance();
-        calendar.clear();
-        calendar.setTime(date);
+        return convertEpochDayToDateTime(convertDateToEpochDay(date));
+    }
 
-        int year = calendar.get(Calendar.YEAR);
-        int javaMonth = calendar.get(Calendar.MONTH);
-        int day = calendar.get(Calendar.DATE);
+    public static Date convertDateTimeToDate(DateTime dateTime) {
+        return convertEpochDayToDate(convertDateTimeToEpochDay(dateTime));
+    }
+
+    /**
+     * Get the formatter of a pattern for the calling thread. The formatter
+     * must not be shared with other threads
+     *
+     * @param dateFormat pattern of SimpleDateFormat, null for yyyy-MM-dd
+     * @return
+     */
+    public static SimpleDateFormat getDateFormat(String dateFormat) {
+        if (dateFormat == null) {
+            dateFormat = DEFAULT_DATE_FORMAT;
+        }
 
-        // javaMonth start at 0. Need to plus 1 to get datetimeMonth
-        return new DateTime(year, javaMonth + 1, day, 0, 0, 0, 0);
+        Map<String, SimpleDateFormat> formats = dateFormatCache.get();
+        SimpleDateFormat formatter = formats.get(dateFormat);
+        if (formatter == null) {
+            formatter = new SimpleDateFormat(dateFormat, Locale.ENGLISH);
+            formats.put(dateFormat, formatter);
+        }
+        return formatter;
     }
 
-    public static Date convertDateTimeToDate(DateTime dateTime) {
-        int year = dateTime.getYear();
-        int datetimeMonth = dateTime.getMonth();
-        int day = dateTime.getDay();
+    /**
+     * Parse a yyyy-MM-dd date without allocating. Only accepts valid dates
+     * with a 4 digits year, 1 or 2 digits month and day, and nothing else
+     *
+     * @param dateString
+     * @return packed date yyyymmdd, or -1 if the string is not a valid date
+     * in this format
+     */
+    public static int parseIsoDate(String dateString) {
+        int length = dateString.length();
+        if (length < 8 || length > 10 || dateString.charAt(4) != '-') {
+            return -1;
+        }
 
-        Calendar calendar = Calendar.getInstance();
-        calendar.clear();
+        int year = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = dateString.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            year = year * 10 + digit;
+        }
+
+        // Month and day have 1 or 2 digits
+        int month = 0;
+        int index = 5;
+        int end = Math.min(index + 2, length);
+        while (index < end && dateString.charAt(index) != '-') {
+            int digit = dateString.charAt(index++) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            month = month * 10 + digit;
+        }
+        if (index == 5 || index >= length || dateString.charAt(index) != '-') {
+            return -1;
+        }
 
-        // datetimeMonth start at 1. Need to minus 1 to get javaMonth
-        calendar.set(year, datetimeMonth - 1, day);
+        int day = 0;
+        int dayStart = ++index;
+        if (length - dayStart < 1 || length - dayStart > 2) {
+            return -1;
+        }
+        while (index < length) {
+            int digit = dateString.charAt(index++) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            day = day * 10 + digit;
+        }
 
-        return calendar.getTime();
+        if (month < 1 || month > 12 || day < 1
+                || day > getNumDaysInMonth(year, month)) {
+            return -1;
+        }
+        return year * 10000 + month * 100 + day;
     }
 
     /**
-     * Get the Date from String with custom format. Default format is yyyy-MM-dd
+     * Get the Date from String with custom format. Default format is yyyy-MM-dd.
+     * Safe to call from any thread
      *
      * @param dateString
      * @param dateFormat
@@ -143,23 +535,22 @@ public class CalendarHelper {
      */
     public static Date getDateFromString(String dateString, String dateFormat)
             throws ParseException {
-        SimpleDateFormat formatter;
         if (dateFormat == null) {
-            if (yyyyMMddFormat == null) {
-                setup();
+            int packedDate = parseIsoDate(dateString);
+            if (packedDate != -1) {
+                return convertEpochDayToDate(getEpochDay(packedDate / 10000,
+                        packedDate / 100 % 100, packedDate % 100));
             }
-
-            formatter = yyyyMMddFormat;
-        } else {
-            formatter = new SimpleDateFormat(dateFormat, Locale.ENGLISH);
         }
 
-        return formatter.parse(dateString);
+        // Other formats, and yyyy-MM-dd strings the fast parser rejects, such
+        // as lenient dates
+        return getDateFormat(dateFormat).parse(dateString);
     }
 
     /**
      * Get the DateTime from String with custom format. Default format is
-     * yyyy-MM-dd
+     * yyyy-MM-dd. Safe to call from any thread
      *
      * @param dateString
      * @param dateFormat
@@ -167,15 +558,39 @@ public class CalendarHelper {
      */
     public static DateTime getDateTimeFromString(String dateString,
                                                  String dateFormat) {
-        Date date;
+        int epochDay = getEpochDayFromString(dateString, dateFormat);
+        if (epochDay == INVALID_EPOCH_DAY) {
+            return null;
+        }
+        return convertEpochDayToDateTime(epochDay);
+    }
+
+    /**
+     * Get the epoch day of a String with custom format. Default format is
+     * yyyy-MM-dd, which is parsed without creating any object. Safe to call
+     * from any thread
+     *
+     * @param dateString
+     * @param dateFormat
+     * @return epoch day, or INVALID_EPOCH_DAY if the string can not be parsed
+     */
+    public static int getEpochDayFromString(String dateString,
+                                            String dateFormat) {
+        if (dateFormat == null) {
+            int packedDate = parseIsoDate(dateString);
+            if (packedDate != -1) {
+                return getEpochDay(packedDate / 10000,
+                        packedDate / 100 % 100, packedDate % 100);
+            }
+        }
+
         try {
-            date = getDateFromString(dateString, dateFormat);
-            return convertDateToDateTime(date);
+            Date date = getDateFormat(dateFormat).parse(dateString);
+            return convertDateToEpochDay(date);
         } catch (ParseException e) {
-            // TODO Auto-generated catch block
             e.printStackTrace();
         }
-        return null;
+        return INVALID_EPOCH_DAY;
     }
 
     public static ArrayList<String> convertToStringList(
@@ -0,0 +1,169 @@
+package com.roomorama.caldroid;
+
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+
+import java.util.Map;
+
+import hirondelle.date4j.DateTime;
+
+/**
+ * CellDecorations holds the custom background and text color of each cell
+ * of a page. The date decorations and decoration maps of CaldroidData are
+ * looked up once per page, and text color resources are resolved to colors
+ * at the same time, so binding a decorated cell is a plain array lookup.
+ * <p/>
+ * The style of a date in DateDecorations, set on the date or given by the
+ * DecorationProvider, gives a background resource. A Drawable in the
+ * background map overrides it, and a text color in the text color map
+ * overrides the text color of the style.
+ * <p/>
+ * A page has at most 42 cells, which cells have a custom text color is kept
+ * as a bit mask.
+ */
+public final class CellDecorations {
+
+    /**
+     * Decorations of a page without any decorated cell
+     */
+    public static final CellDecorations NONE = new CellDecorations(null, null, null, 0);
+
+    private final int[] backgroundResources;
+    private final Drawable[] backgrounds;
+    private final int[] textColors;
+    private final long textColorMask;
+
+    private CellDecorations(int[] backgroundResources, Drawable[] backgrounds,
+                            int[] textColors, long textColorMask) {
+        this.backgroundResources = backgroundResources;
+        this.backgrounds = backgrounds;
+        this.textColors = textColors;
+        this.textColorMask = textColorMask;
+    }
+
+    /**
+     * Look up the decorations of all the cells of a page
+     *
+     * @param resources  used to resolve text colors, see ResourceCache
+     * @param data
+     * @param monthPage
+     * @param cellStates states of the cells, only the cells flagged
+     *                   CaldroidGridAdapter.CELL_DECORATED are looked up
+     * @return
+     */
+    public static CellDecorations compute(Resources resources, CaldroidData data,
+                                          MonthPage monthPage, byte[] cellStates) {
+        Map<DateTime, Drawable> backgroundForDateTimeMap = data.getBackgroundForDateTimeMap();
+        Map<DateTime, Integer> textColorForDateTimeMap = data.getTextColorForDateTimeMap();
+        if (backgroundForDateTimeMap != null && backgroundForDateTimeMap.isEmpty()) {
+            backgroundForDateTimeMap = null;
+        }
+        if (textColorForDateTimeMap != null && textColorForDateTimeMap.isEmpty()) {
+            textColorForDateTimeMap = null;
+        }
+        DateDecorations dateDecorations = data.getDateDecorations();
+        int[] pageStyles = dateDecorations.getPageStyles(monthPage);
+        if (backgroundForDateTimeMap == null && textColorForDateTimeMap == null
+                && pageStyles == null) {
+            return NONE;
+        }
+
+        int size = monthPage.size();
+        int[] backgroundResources = null;
+        Drawable[] backgrounds = null;
+        int[] textColors = null;
+        long textColorMask = 0;
+
+        for (int position = 0; position < size; position++) {
+            if ((cellStates[position] & CaldroidGridAdapter.CELL_DECORATED) == 0) {
+                continue;
+            }
+
+            DecorationStyle style = pageStyles == null ? null
+                    : dateDecorations.getStyle(pageStyles[position]);
+            if (style != null) {
+                if (style.getBackgroundResource() != 0) {
+                    if (backgroundResources == null) {
+                        backgroundResources = new int[size];
+                    }
+                    backgroundResources[position] = style.getBackgroundResource();
+                }
+
+                if (style.getTextColorResource() != 0) {
+                    if (textColors == null) {
+                        textColors = new int[size];
+                    }
+                    textColors[position] = ResourceCache.getColor(resources,
+                            style.getTextColorResource());
+                    textColorMask |= 1L << position;
+                }
+            }
+
+            // Maps are only looked up if the client uses them
+            if (backgroundForDateTimeMap == null && textColorForDateTimeMap == null) {
+                continue;
+            }
+            DateTime dateTime = monthPage.getDateTime(position);
+
+            if (backgroundForDateTimeMap != null) {
+                Drawable drawable = backgroundForDateTimeMap.get(dateTime);
+                if (drawable != null) {
+                    if (backgrounds == null) {
+                        backgrounds = new Drawable[size];
+                    }
+                    backgrounds[position] = drawable;
+                }
+            }
+
+            if (textColorForDateTimeMap != null) {
+                Integer textColorResource = textColorForDateTimeMap.get(dateTime);
+                if (textColorResource != null) {
+                    if (textColors == null) {
+                        textColors = new int[size];
+                    }
+                    textColors[position] = ResourceCache.getColor(resources,
+                            textColorResource);
+                    textColorMask |= 1L << position;
+                }
+            }
+        }
+
+        if (backgroundResources == null && backgrounds == null && textColors == null) {
+            return NONE;
+        }
+        return new CellDecorations(backgroundResources, backgrounds, textColors,
+                textColorMask);
+    }
+
+    /**
+     * Background resource of the decoration style of the cell. Ignored if
+     * the cell has a custom background Drawable
+     *
+     * @param position
+     * @return drawable resource, 0 if the cell has none
+     */
+    public int getBackgroundResource(int position) {
+        return backgroundResources == null ? 0 : backgroundResources[position];
+    }
+
+    /**
+     * @param position
+     * @return custom background Drawable of the cell, null if it has none
+     */
+    public Drawable getBackground(int position) {
+        return backgrounds == null ? null : backgrounds[position];
+    }
+
+    public boolean hasTextColor(int position) {
+        return (textColorMask & (1L << position)) != 0;
+    }
+
+    /**
+     * @param position
+     * @return custom text color of the cell, only valid if
+     * {@link #hasTextColor(int)}
+     */
+    public int getTextColor(int position) {
+        return textColors[position];
+    }
+}
@@ -0,0 +1,145 @@
+package com.roomorama.caldroid;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Typeface;
+import android.util.TypedValue;
+
+import com.caldroid.R;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CellStyle holds the default attributes of date cells, resolved from the
+ * styleCaldroidSquareCell or styleCaldroidNormalCell style of a Caldroid
+ * theme. Resolving a theme is slow, so styles are resolved once per theme
+ * and type of cell, and shared by all adapters and MonthViews of the
+ * process.
+ * <p/>
+ * The cache is cleared when the configuration changes, because styles can
+ * depend on resource qualifiers such as orientation or screen size.
+ */
+public final class CellStyle {
+
+    private static final Map<Long, CellStyle> cache = new HashMap<Long, CellStyle>();
+
+    /**
+     * Configuration the cached styles were resolved with
+     */
+    private static Configuration cacheConfiguration;
+
+    private final int backgroundResource;
+    private final ColorStateList textColors;
+    private final int textSize;
+    private final int textStyle;
+    private final int padding;
+
+    private CellStyle(int backgroundResource, ColorStateList textColors,
+                      int textSize, int textStyle, int padding) {
+        this.backgroundResource = backgroundResource;
+        this.textColors = textColors;
+        this.textSize = textSize;
+        this.textStyle = textStyle;
+        this.padding = padding;
+    }
+
+    /**
+     * Get the cell style of a theme, resolved on first call
+     *
+     * @param context            used to resolve the theme
+     * @param themeResource      Caldroid theme
+     * @param squareTextViewCell true for the square cell style, false for
+     *                           the normal cell style
+     * @return
+     */
+    public static CellStyle get(Context context, int themeResource,
+                                boolean squareTextViewCell) {
+        Configuration configuration = context.getResources().getConfiguration();
+        Long key = ((long) themeResource << 1) | (squareTextViewCell ? 1 : 0);
+
+        synchronized (cache) {
+            if (cacheConfiguration == null || !cacheConfiguration.equals(configuration)) {
+                cache.clear();
+                cacheConfiguration = new Configuration(configuration);
+            }
+
+            CellStyle cellStyle = cache.get(key);
+            if (cellStyle == null) {
+                cellStyle = resolve(context, themeResource, squareTextViewCell);
+                cache.put(key, cellStyle);
+            }
+            return cellStyle;
+        }
+    }
+
+    /**
+     * Forget all the resolved styles. CaldroidFragment calls it when the
+     * configuration changes
+     */
+    public static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+            cacheConfiguration = null;
+        }
+    }
+
+    private static CellStyle resolve(Context context, int themeResource,
+                                     boolean squareTextViewCell) {
+        Context wrapped = ThemeCache.getContext(context, themeResource);
+
+        // Get style of normal cell or square cell in the theme
+        Resources.Theme theme = wrapped.getTheme();
+        TypedValue styleCellVal = new TypedValue();
+        if (squareTextViewCell) {
+            theme.resolveAttribute(R.attr.styleCaldroidSquareCell, styleCellVal, true);
+        } else {
+            theme.resolveAttribute(R.attr.styleCaldroidNormalCell, styleCellVal, true);
+        }
+
+        TypedArray typedArray = wrapped.obtainStyledAttributes(styleCellVal.data, R.styleable.Cell);
+        CellStyle cellStyle = new CellStyle(
+                typedArray.getResourceId(R.styleable.Cell_android_background, -1),
+                typedArray.getColorStateList(R.styleable.Cell_android_textColor),
+                typedArray.getDimensionPixelSize(R.styleable.Cell_android_textSize, 14),
+                typedArray.getInt(R.styleable.Cell_android_textStyle, Typeface.NORMAL),
+                typedArray.getDimensionPixelSize(R.styleable.Cell_android_padding, 0));
+        typedArray.recycle();
+        return cellStyle;
+    }
+
+    /**
+     * @return background resource of the cell, -1 if there is none
+     */
+    public int getBackgroundResource() {
+        return backgroundResource;
+    }
+
+    public ColorStateList getTextColors() {
+        return textColors;
+    }
+
+    /**
+     * @return text size in pixels
+     */
+    public int getTextSize() {
+        return textSize;
+    }
+
+    /**
+     * @return Typeface.NORMAL, BOLD, ITALIC or BOLD_ITALIC
+     */
+    public int getTextStyle() {
+        return textStyle;
+    }
+
+    /**
+     * @return padding in pixels
+     */
+    public int getPadding() {
+        return padding;
+    }
+}
@@ -5,8 +5,6 @@ import android.util.AttributeSet;
 import android.widget.TextView;
 import com.caldroid.R;
 
-import java.util.ArrayList;
-
 /**
  * Created by crocodile2u on 3/30/15.
  */
@@ -17,7 +15,52 @@ public class CellView extends TextView {
     public static final int STATE_DISABLED = R.attr.state_date_disabled;
     public static final int STATE_PREV_NEXT_MONTH = R.attr.state_date_prev_next_month;
 
-    private ArrayList<Integer> customStates = new ArrayList<Integer>();
+    /**
+     * Custom states, the index of a state is its bit in the custom state mask
+     */
+    private static final int[] CUSTOM_STATES = {
+            STATE_TODAY, STATE_SELECTED, STATE_DISABLED, STATE_PREV_NEXT_MONTH
+    };
+
+    /**
+     * Precomputed state array of every combination of custom states, indexed
+     * by custom state mask
+     */
+    private static final int[][] CUSTOM_STATE_SETS = new int[1 << CUSTOM_STATES.length][];
+
+    static {
+        for (int mask = 0; mask < CUSTOM_STATE_SETS.length; mask++) {
+            int[] stateSet = new int[Integer.bitCount(mask)];
+            int i = 0;
+            for (int bit = 0; bit < CUSTOM_STATES.length; bit++) {
+                if ((mask & (1 << bit)) != 0) {
+                    stateSet[i++] = CUSTOM_STATES[bit];
+                }
+            }
+            CUSTOM_STATE_SETS[mask] = stateSet;
+        }
+    }
+
+    private int customStateMask;
+
+    /**
+     * Custom states added by clients that are not in CUSTOM_STATES. Only
+     * the first extraStateCount are used
+     */
+    private int[] extraStates;
+    private int extraStateCount;
+    private boolean extraStatesChanged;
+
+    /**
+     * Custom state mask the drawable state was last refreshed with
+     */
+    private int refreshedStateMask;
+
+    /**
+     * Style the text size, text style and padding of this cell were last
+     * set from, see CaldroidGridAdapter
+     */
+    CellStyle cellStyle;
 
     public CellView(Context context) {
         super(context);
@@ -25,41 +68,100 @@ public class CellView extends TextView {
 
     public CellView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        init();
     }
 
     public CellView(Context context, AttributeSet attrs) {
         super(context, attrs);
-        init();
-    }
-
-    private void init() {
-        if (null == customStates) customStates = new ArrayList<Integer>();
     }
 
     public void resetCustomStates() {
-        customStates.clear();
+        customStateMask = 0;
+        if (extraStateCount > 0) {
+            extraStateCount = 0;
+            extraStatesChanged = true;
+        }
     }
 
+    /**
+     * Add a custom state. STATE_TODAY, STATE_SELECTED, STATE_DISABLED and
+     * STATE_PREV_NEXT_MONTH are kept as bits, other states in a small array
+     *
+     * @param state
+     */
     public void addCustomState(int state) {
-        if (!customStates.contains(state)) {
-            customStates.add(state);
+        int mask = getCustomStateMask(state);
+        if (mask != 0) {
+            customStateMask |= mask;
+            return;
+        }
+
+        for (int i = 0; i < extraStateCount; i++) {
+            if (extraStates[i] == state) {
+                return;
+            }
+        }
+        if (extraStates == null) {
+            extraStates = new int[2];
+        } else if (extraStateCount == extraStates.length) {
+            int[] grown = new int[extraStateCount * 2];
+            System.arraycopy(extraStates, 0, grown, 0, extraStateCount);
+            extraStates = grown;
+        }
+        extraStates[extraStateCount++] = state;
+        extraStatesChanged = true;
+    }
+
+    /**
+     * Get bit of a custom state in the custom state mask
+     *
+     * @param state
+     * @return the bit, 0 if state is not one of CUSTOM_STATES
+     */
+    static int getCustomStateMask(int state) {
+        for (int bit = 0; bit < CUSTOM_STATES.length; bit++) {
+            if (CUSTOM_STATES[bit] == state) {
+                return 1 << bit;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the state array of a custom state mask, shared by all cells
+     *
+     * @param customStateMask
+     * @return
+     */
+    static int[] getCustomStateSet(int customStateMask) {
+        return CUSTOM_STATE_SETS[customStateMask];
+    }
+
+    /**
+     * Refresh drawable state after custom states are added. Does nothing if
+     * custom states are the same as last refresh
+     */
+    public void refreshCustomStates() {
+        if (customStateMask != refreshedStateMask || extraStatesChanged) {
+            refreshDrawableState();
         }
     }
 
     @Override
     protected int[] onCreateDrawableState(int extraSpace) {
-        init();
-        int customStateSize = customStates.size();
-        if (customStateSize > 0) {
-            final int[] drawableState = super.onCreateDrawableState(extraSpace + customStateSize);
-            int[] stateArray = new int[customStateSize];
-            int i = 0;
-            for (Integer state : customStates) {
-                stateArray[i] = state;
-                i++;
-            }
-            mergeDrawableStates(drawableState, stateArray);
+        refreshedStateMask = customStateMask;
+        extraStatesChanged = false;
+        int[] customStateSet = CUSTOM_STATE_SETS[customStateMask];
+        if (extraStateCount > 0) {
+            final int[] drawableState = super.onCreateDrawableState(extraSpace
+                    + customStateSet.length + extraStateCount);
+            mergeDrawableStates(drawableState, customStateSet);
+            int[] extraStateSet = new int[extraStateCount];
+            System.arraycopy(extraStates, 0, extraStateSet, 0, extraStateCount);
+            mergeDrawableStates(drawableState, extraStateSet);
+            return drawableState;
+        } else if (customStateSet.length > 0) {
+            final int[] drawableState = super.onCreateDrawableState(extraSpace + customStateSet.length);
+            mergeDrawableStates(drawableState, customStateSet);
             return drawableState;
         } else {
             return super.onCreateDrawableState(extraSpace);
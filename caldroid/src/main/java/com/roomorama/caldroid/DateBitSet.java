@@ -0,0 +1,555 @@
+package com.roomorama.caldroid;
+
+import java.util.ArrayList;
+
+import hirondelle.date4j.DateTime;
+
+/**
+ * DateBitSet is a set of dates stored as one bit per epoch day (see
+ * {@link CalendarHelper#getEpochDay(int, int, int)}). Bits are stored in
+ * pages of 512 days, each page is 8 longs, and pages without any date are
+ * not allocated. Ten years of dates take about 60 bytes per year, whatever
+ * the number of dates.
+ * <p/>
+ * contains() is O(1). Union, intersection and difference work a whole
+ * word at a time.
+ * <p/>
+ * Only dates from CalendarHelper.MIN_EPOCH_DAY to MAX_EPOCH_DAY can be in
+ * the set, ranges are clamped to them, so an open range such as
+ * Integer.MIN_VALUE to a date does not allocate pages for billions of days.
+ */
+public final class DateBitSet {
+
+    /**
+     * Returned by {@link #nextSetDay(int)} when there is no more date
+     */
+    public static final int NO_DAY = Integer.MIN_VALUE;
+
+    private static final int PAGE_SHIFT = 9;
+    private static final int DAYS_PER_PAGE = 1 << PAGE_SHIFT;
+    private static final int WORDS_PER_PAGE = DAYS_PER_PAGE / 64;
+
+    /**
+     * Pages from firstPage to firstPage + pages.length - 1, null if the page
+     * has no date
+     */
+    private long[][] pages;
+    private int firstPage;
+
+    public DateBitSet() {
+    }
+
+    /**
+     * Create a copy of other
+     *
+     * @param other
+     */
+    public DateBitSet(DateBitSet other) {
+        if (other.pages != null) {
+            firstPage = other.firstPage;
+            pages = new long[other.pages.length][];
+            for (int i = 0; i < pages.length; i++) {
+                if (other.pages[i] != null) {
+                    pages[i] = other.pages[i].clone();
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a set from a list of dates. Null dates are ignored
+     *
+     * @param dateTimes
+     * @return
+     */
+    public static DateBitSet fromDateTimes(Iterable<DateTime> dateTimes) {
+        DateBitSet set = new DateBitSet();
+        if (dateTimes != null) {
+            for (DateTime dateTime : dateTimes) {
+                if (dateTime != null) {
+                    set.add(CalendarHelper.convertDateTimeToEpochDay(dateTime));
+                }
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Create a set with all the dates of the ranges
+     *
+     * @param rangeSet
+     * @return
+     */
+    public static DateBitSet fromRangeSet(DateRangeSet rangeSet) {
+        DateBitSet set = new DateBitSet();
+        for (int i = 0; i < rangeSet.getRangeCount(); i++) {
+            set.addRange(rangeSet.getRangeStart(i), rangeSet.getRangeEnd(i));
+        }
+        return set;
+    }
+
+    /**
+     * Create a set from ranges exported by {@link DateRangeSet#toRangeArray()}
+     *
+     * @param ranges pairs of first and last epoch days, inclusive
+     * @return
+     */
+    public static DateBitSet fromRangeArray(int[] ranges) {
+        if (ranges.length % 2 != 0) {
+            throw new IllegalArgumentException("Odd number of range ends "
+                    + ranges.length);
+        }
+
+        DateBitSet set = new DateBitSet();
+        for (int i = 0; i < ranges.length; i += 2) {
+            set.addRange(ranges[i], ranges[i + 1]);
+        }
+        return set;
+    }
+
+    private static int pageOf(int epochDay) {
+        // Arithmetic shift rounds down for negative days too
+        return epochDay >> PAGE_SHIFT;
+    }
+
+    private long[] getPage(int page) {
+        if (pages == null) {
+            return null;
+        }
+        int index = page - firstPage;
+        if (index < 0 || index >= pages.length) {
+            return null;
+        }
+        return pages[index];
+    }
+
+    private long[] getOrCreatePage(int page) {
+        if (pages == null) {
+            pages = new long[1][];
+            firstPage = page;
+        } else if (page < firstPage) {
+            long[][] grown = new long[pages.length + firstPage - page][];
+            System.arraycopy(pages, 0, grown, firstPage - page, pages.length);
+            pages = grown;
+            firstPage = page;
+        } else if (page >= firstPage + pages.length) {
+            long[][] grown = new long[page - firstPage + 1][];
+            System.arraycopy(pages, 0, grown, 0, pages.length);
+            pages = grown;
+        }
+
+        int index = page - firstPage;
+        if (pages[index] == null) {
+            pages[index] = new long[WORDS_PER_PAGE];
+        }
+        return pages[index];
+    }
+
+    /**
+     * Free the page if it has no date
+     */
+    private void trimPage(int page) {
+        int index = page - firstPage;
+        long[] words = pages[index];
+        if (words != null && isZero(words)) {
+            pages[index] = null;
+        }
+    }
+
+    private static boolean isZero(long[] words) {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Mask of the bits fromBit to toBit of a word, inclusive
+     */
+    private static long wordMask(int fromBit, int toBit) {
+        return (-1L << fromBit) & (-1L >>> (63 - toBit));
+    }
+
+    public boolean contains(int epochDay) {
+        long[] words = getPage(pageOf(epochDay));
+        if (words == null) {
+            return false;
+        }
+        int bit = epochDay & (DAYS_PER_PAGE - 1);
+        return (words[bit >> 6] & (1L << bit)) != 0;
+    }
+
+    public boolean contains(DateTime dateTime) {
+        return dateTime != null
+                && contains(CalendarHelper.convertDateTimeToEpochDay(dateTime));
+    }
+
+    public boolean isEmpty() {
+        if (pages != null) {
+            for (long[] words : pages) {
+                if (words != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of dates in the set
+     */
+    public int cardinality() {
+        int count = 0;
+        if (pages != null) {
+            for (long[] words : pages) {
+                if (words != null) {
+                    for (long word : words) {
+                        count += Long.bitCount(word);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    public void add(int epochDay) {
+        if (epochDay < CalendarHelper.MIN_EPOCH_DAY
+                || epochDay > CalendarHelper.MAX_EPOCH_DAY) {
+            throw new IllegalArgumentException("Unsupported epoch day " + epochDay);
+        }
+
+        long[] words = getOrCreatePage(pageOf(epochDay));
+        int bit = epochDay & (DAYS_PER_PAGE - 1);
+        words[bit >> 6] |= 1L << bit;
+    }
+
+    public void remove(int epochDay) {
+        int page = pageOf(epochDay);
+        long[] words = getPage(page);
+        if (words != null) {
+            int bit = epochDay & (DAYS_PER_PAGE - 1);
+            words[bit >> 6] &= ~(1L << bit);
+            trimPage(page);
+        }
+    }
+
+    /**
+     * Add all the dates from fromEpochDay to toEpochDay, inclusive. Dates
+     * out of the supported range are ignored
+     *
+     * @param fromEpochDay
+     * @param toEpochDay
+     */
+    public void addRange(int fromEpochDay, int toEpochDay) {
+        setRange(fromEpochDay, toEpochDay, true);
+    }
+
+    /**
+     * Remove all the dates from fromEpochDay to toEpochDay, inclusive
+     *
+     * @param fromEpochDay
+     * @param toEpochDay
+     */
+    public void removeRange(int fromEpochDay, int toEpochDay) {
+        setRange(fromEpochDay, toEpochDay, false);
+    }
+
+    private void setRange(int fromEpochDay, int toEpochDay, boolean value) {
+        if (fromEpochDay > toEpochDay) {
+            throw new IllegalArgumentException("fromEpochDay " + fromEpochDay
+                    + " is after toEpochDay " + toEpochDay);
+        }
+
+        // Extreme or corrupt ends would grow the page table to the whole span
+        fromEpochDay = Math.max(fromEpochDay, CalendarHelper.MIN_EPOCH_DAY);
+        toEpochDay = Math.min(toEpochDay, CalendarHelper.MAX_EPOCH_DAY);
+        if (fromEpochDay > toEpochDay) {
+            return;
+        }
+
+        int fromPage = pageOf(fromEpochDay);
+        int toPage = pageOf(toEpochDay);
+        for (int page = fromPage; page <= toPage; page++) {
+            long[] words = value ? getOrCreatePage(page) : getPage(page);
+            if (words == null) {
+                continue;
+            }
+
+            int fromBit = page == fromPage ? fromEpochDay & (DAYS_PER_PAGE - 1) : 0;
+            int toBit = page == toPage ? toEpochDay & (DAYS_PER_PAGE - 1) : DAYS_PER_PAGE - 1;
+            int fromWord = fromBit >> 6;
+            int toWord = toBit >> 6;
+            for (int word = fromWord; word <= toWord; word++) {
+                long mask = wordMask(word == fromWord ? fromBit & 63 : 0,
+                        word == toWord ? toBit & 63 : 63);
+                if (value) {
+                    words[word] |= mask;
+                } else {
+                    words[word] &= ~mask;
+                }
+            }
+
+            if (!value) {
+                trimPage(page);
+            }
+        }
+    }
+
+    public void clear() {
+        pages = null;
+    }
+
+    /**
+     * Add all the dates of other to this set
+     *
+     * @param other
+     */
+    public void addAll(DateBitSet other) {
+        if (other.pages == null) {
+            return;
+        }
+        for (int i = 0; i < other.pages.length; i++) {
+            long[] otherWords = other.pages[i];
+            if (otherWords != null) {
+                long[] words = getOrCreatePage(other.firstPage + i);
+                for (int word = 0; word < WORDS_PER_PAGE; word++) {
+                    words[word] |= otherWords[word];
+                }
+            }
+        }
+    }
+
+    /**
+     * Keep only the dates that are also in other
+     *
+     * @param other
+     */
+    public void retainAll(DateBitSet other) {
+        if (pages == null) {
+            return;
+        }
+        for (int i = 0; i < pages.length; i++) {
+            long[] words = pages[i];
+            if (words == null) {
+                continue;
+            }
+            long[] otherWords = other.getPage(firstPage + i);
+            if (otherWords == null) {
+                pages[i] = null;
+                continue;
+            }
+            for (int word = 0; word < WORDS_PER_PAGE; word++) {
+                words[word] &= otherWords[word];
+            }
+            trimPage(firstPage + i);
+        }
+    }
+
+    /**
+     * Remove all the dates of other from this set
+     *
+     * @param other
+     */
+    public void removeAll(DateBitSet other) {
+        if (pages == null || other.pages == null) {
+            return;
+        }
+        for (int i = 0; i < pages.length; i++) {
+            long[] words = pages[i];
+            long[] otherWords = other.getPage(firstPage + i);
+            if (words == null || otherWords == null) {
+                continue;
+            }
+            for (int word = 0; word < WORDS_PER_PAGE; word++) {
+                words[word] &= ~otherWords[word];
+            }
+            trimPage(firstPage + i);
+        }
+    }
+
+    /**
+     * Get the first date of the set on or after fromEpochDay
+     *
+     * @param fromEpochDay
+     * @return epoch day, or NO_DAY if there is no such date
+     */
+    public int nextSetDay(int fromEpochDay) {
+        if (pages == null) {
+            return NO_DAY;
+        }
+
+        int page = Math.max(pageOf(fromEpochDay), firstPage);
+        int lastPage = firstPage + pages.length - 1;
+        for (; page <= lastPage; page++) {
+            long[] words = pages[page - firstPage];
+            if (words == null) {
+                continue;
+            }
+
+            int fromBit = page == pageOf(fromEpochDay)
+                    ? fromEpochDay & (DAYS_PER_PAGE - 1) : 0;
+            for (int word = fromBit >> 6; word < WORDS_PER_PAGE; word++) {
+                long bits = words[word];
+                if (word == fromBit >> 6) {
+                    bits &= -1L << (fromBit & 63);
+                }
+                if (bits != 0) {
+                    return (page << PAGE_SHIFT) + (word << 6)
+                            + Long.numberOfTrailingZeros(bits);
+                }
+            }
+        }
+        return NO_DAY;
+    }
+
+    /**
+     * Get the first day on or after fromEpochDay that is not in the set.
+     * Missing pages are skipped at once, other pages a word at a time
+     *
+     * @param fromEpochDay
+     * @return the day, or NO_DAY if all days up to Integer.MAX_VALUE are in
+     * the set
+     */
+    public int nextClearDay(int fromEpochDay) {
+        int page = pageOf(fromEpochDay);
+        int fromBit = fromEpochDay & (DAYS_PER_PAGE - 1);
+        while (true) {
+            long[] words = getPage(page);
+            if (words == null) {
+                return (page << PAGE_SHIFT) + fromBit;
+            }
+
+            for (int word = fromBit >> 6; word < WORDS_PER_PAGE; word++) {
+                long bits = ~words[word];
+                if (word == fromBit >> 6) {
+                    bits &= -1L << (fromBit & 63);
+                }
+                if (bits != 0) {
+                    return (page << PAGE_SHIFT) + (word << 6)
+                            + Long.numberOfTrailingZeros(bits);
+                }
+            }
+
+            if (page == pageOf(Integer.MAX_VALUE)) {
+                return NO_DAY;
+            }
+            page++;
+            fromBit = 0;
+        }
+    }
+
+    /**
+     * Check if any date from fromEpochDay to toEpochDay is in the set
+     *
+     * @param fromEpochDay
+     * @param toEpochDay
+     * @return
+     */
+    public boolean intersects(int fromEpochDay, int toEpochDay) {
+        int next = nextSetDay(fromEpochDay);
+        return next != NO_DAY && next <= toEpochDay;
+    }
+
+    /**
+     * Export the dates as ranges. Each range is found with nextSetDay() and
+     * nextClearDay(), so the cost depends on the number of ranges and pages,
+     * not on the number of dates
+     *
+     * @return
+     */
+    public DateRangeSet toRangeSet() {
+        DateRangeSet rangeSet = new DateRangeSet();
+        int start = nextSetDay(Integer.MIN_VALUE + 1);
+        while (start != NO_DAY) {
+            int end = nextClearDay(start);
+            if (end == NO_DAY) {
+                rangeSet.addRange(start, Integer.MAX_VALUE);
+                break;
+            }
+            rangeSet.addRange(start, end - 1);
+            start = nextSetDay(end);
+        }
+        return rangeSet;
+    }
+
+    /**
+     * Create a list with all the dates of the set, in ascending order. The
+     * list is not backed by the set
+     *
+     * @return
+     */
+    public ArrayList<DateTime> toDateTimeList() {
+        ArrayList<DateTime> dateTimes = new ArrayList<DateTime>(cardinality());
+        for (int day = nextSetDay(Integer.MIN_VALUE + 1); day != NO_DAY;
+             day = day == Integer.MAX_VALUE ? NO_DAY : nextSetDay(day + 1)) {
+            dateTimes.add(CalendarHelper.convertEpochDayToDateTime(day));
+        }
+        return dateTimes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DateBitSet)) {
+            return false;
+        }
+
+        // Compare content, pages without date may or may not be allocated
+        DateBitSet other = (DateBitSet) o;
+        return containsAllPages(other) && other.containsAllPages(this);
+    }
+
+    private boolean containsAllPages(DateBitSet other) {
+        if (other.pages == null) {
+            return true;
+        }
+        for (int i = 0; i < other.pages.length; i++) {
+            long[] otherWords = other.pages[i];
+            if (otherWords == null) {
+                continue;
+            }
+            long[] words = getPage(other.firstPage + i);
+            if (words == null) {
+                if (!isZero(otherWords)) {
+                    return false;
+                }
+                continue;
+            }
+            for (int word = 0; word < WORDS_PER_PAGE; word++) {
+                if (words[word] != otherWords[word]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        if (pages != null) {
+            for (int i = 0; i < pages.length; i++) {
+                long[] words = pages[i];
+                if (words != null) {
+                    for (int word = 0; word < WORDS_PER_PAGE; word++) {
+                        long bits = words[word];
+                        if (bits != 0) {
+                            hash += (firstPage + i) * 31 + word
+                                    ^ (int) (bits ^ (bits >>> 32));
+                        }
+                    }
+                }
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return toRangeSet().toString();
+    }
+}
@@ -0,0 +1,136 @@
+package com.roomorama.caldroid;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import hirondelle.date4j.DateTime;
+
+/**
+ * DateConstraints tells which dates the user can pick. It combines the
+ * min / max dates, the disabled dates and the rules of disabled dates, so
+ * the cells drawn as disabled and the dates rejected on click always come
+ * from the same answer.
+ * <p/>
+ * Queries take an epoch day (see
+ * {@link CalendarHelper#getEpochDay(int, int, int)}). The range check and
+ * the disabled date lookup are O(1), rules are only evaluated for dates that
+ * pass both. Constraints are immutable, and shared by the snapshots of
+ * CaldroidData until min / max or disabled dates change.
+ */
+public final class DateConstraints {
+
+    /**
+     * Constraints that accept every date
+     */
+    public static final DateConstraints NONE = new DateConstraints(
+            Integer.MIN_VALUE, Integer.MAX_VALUE, new DateBitSet(), null);
+
+    private final int minEpochDay;
+    private final int maxEpochDay;
+    private final DateBitSet disableDateSet;
+    private final List<DateRule> disableDateRules;
+
+    /**
+     * @param minEpochDay      first selectable date, Integer.MIN_VALUE for no
+     *                         limit
+     * @param maxEpochDay      last selectable date, Integer.MAX_VALUE for no
+     *                         limit
+     * @param disableDateSet   disabled dates. Not copied, must not be
+     *                         modified afterwards
+     * @param disableDateRules rules of disabled dates, can be null
+     */
+    public DateConstraints(int minEpochDay, int maxEpochDay,
+                           DateBitSet disableDateSet,
+                           List<DateRule> disableDateRules) {
+        this.minEpochDay = minEpochDay;
+        this.maxEpochDay = maxEpochDay;
+        this.disableDateSet = disableDateSet;
+        this.disableDateRules = disableDateRules == null || disableDateRules.isEmpty()
+                ? Collections.<DateRule>emptyList()
+                : Collections.unmodifiableList(new ArrayList<DateRule>(disableDateRules));
+    }
+
+    /**
+     * Check if the user can pick a date: it is within min / max dates, and
+     * is not disabled by date or by rule
+     *
+     * @param epochDay
+     * @return
+     */
+    public boolean isSelectable(int epochDay) {
+        return !isOutOfRange(epochDay) && !isDisabled(epochDay);
+    }
+
+    public boolean isSelectable(DateTime dateTime) {
+        return dateTime != null
+                && isSelectable(CalendarHelper.convertDateTimeToEpochDay(dateTime));
+    }
+
+    /**
+     * Check if a date is before min date or after max date
+     *
+     * @param epochDay
+     * @return
+     */
+    public boolean isOutOfRange(int epochDay) {
+        return epochDay < minEpochDay || epochDay > maxEpochDay;
+    }
+
+    /**
+     * Check if a date is disabled, by date or by rule. Does not check min /
+     * max dates
+     *
+     * @param epochDay
+     * @return
+     */
+    public boolean isDisabled(int epochDay) {
+        return disableDateSet.contains(epochDay)
+                || DateRule.matchesAny(disableDateRules, epochDay);
+    }
+
+    /**
+     * Check if some date from fromEpochDay to toEpochDay may be disabled. When
+     * it returns false, isDisabled() is false for all these dates
+     *
+     * @param fromEpochDay
+     * @param toEpochDay
+     * @return
+     */
+    public boolean mayDisable(int fromEpochDay, int toEpochDay) {
+        return !disableDateRules.isEmpty()
+                || disableDateSet.intersects(fromEpochDay, toEpochDay);
+    }
+
+    /**
+     * @return epoch day of min date, Integer.MIN_VALUE if there is no min date
+     */
+    public int getMinEpochDay() {
+        return minEpochDay;
+    }
+
+    /**
+     * @return epoch day of max date, Integer.MAX_VALUE if there is no max date
+     */
+    public int getMaxEpochDay() {
+        return maxEpochDay;
+    }
+
+    /**
+     * Disabled dates. Must not be modified
+     *
+     * @return
+     */
+    public DateBitSet getDisableDateSet() {
+        return disableDateSet;
+    }
+
+    /**
+     * Rules of disabled dates. Can not be modified
+     *
+     * @return
+     */
+    public List<DateRule> getDisableDateRules() {
+        return disableDateRules;
+    }
+}
@@ -0,0 +1,447 @@
+package com.roomorama.caldroid;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DateDecorations assigns a DecorationStyle to dates. Clients register a
+ * small palette of styles with {@link #addStyle(DecorationStyle)}, then give
+ * each date the index of its style.
+ * <p/>
+ * Indexes are stored as one byte per epoch day (see
+ * {@link CalendarHelper#getEpochDay(int, int, int)}), in pages of 32 days,
+ * about a month. Pages without any decorated date are not allocated, so a
+ * year of decorations takes about 600 bytes, whatever the number of
+ * decorated dates.
+ * <p/>
+ * Styles can also come from a DecorationProvider, asked once per page. The
+ * styles it provides are remembered until invalidated, and shared by the
+ * copies of this object. Styles set on a date take precedence over the
+ * provided ones.
+ */
+public final class DateDecorations {
+
+    /**
+     * Style index of a date without decoration
+     */
+    public static final int NO_STYLE = 0;
+
+    /**
+     * Maximum number of styles in the palette
+     */
+    public static final int MAX_STYLES = 255;
+
+    private static final int PAGE_SHIFT = 5;
+    private static final int DAYS_PER_PAGE = 1 << PAGE_SHIFT;
+
+    /**
+     * Style of index i is at i - 1
+     */
+    private final ArrayList<DecorationStyle> styles;
+
+    /**
+     * Pages from firstPage to firstPage + pages.length - 1, null if the page
+     * has no decorated date
+     */
+    private byte[][] pages;
+    private int firstPage;
+
+    /**
+     * Styles of the provider, shared with the copies. Null if there is no
+     * provider
+     */
+    private ProvidedStyles providedStyles;
+
+    public DateDecorations() {
+        styles = new ArrayList<DecorationStyle>();
+    }
+
+    /**
+     * Create a copy of other
+     *
+     * @param other
+     */
+    public DateDecorations(DateDecorations other) {
+        styles = new ArrayList<DecorationStyle>(other.styles);
+        providedStyles = other.providedStyles;
+        if (other.pages != null) {
+            firstPage = other.firstPage;
+            pages = new byte[other.pages.length][];
+            for (int i = 0; i < pages.length; i++) {
+                if (other.pages[i] != null) {
+                    pages[i] = other.pages[i].clone();
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a style to the palette. Adding a style equal to one already in the
+     * palette returns the index of that style
+     *
+     * @param style
+     * @return index of the style, from 1 to MAX_STYLES
+     */
+    public int addStyle(DecorationStyle style) {
+        int index = styles.indexOf(style);
+        if (index >= 0) {
+            return index + 1;
+        }
+
+        if (styles.size() >= MAX_STYLES) {
+            throw new IllegalStateException("Palette already has "
+                    + MAX_STYLES + " styles");
+        }
+        styles.add(style);
+        return styles.size();
+    }
+
+    /**
+     * @param styleIndex
+     * @return the style, null for NO_STYLE
+     */
+    public DecorationStyle getStyle(int styleIndex) {
+        if (styleIndex == NO_STYLE) {
+            return null;
+        }
+        return styles.get(styleIndex - 1);
+    }
+
+    /**
+     * @return number of styles in the palette
+     */
+    public int getStyleCount() {
+        return styles.size();
+    }
+
+    private static int pageOf(int epochDay) {
+        return epochDay >> PAGE_SHIFT;
+    }
+
+    private byte[] getPage(int page) {
+        if (pages == null) {
+            return null;
+        }
+        int index = page - firstPage;
+        if (index < 0 || index >= pages.length) {
+            return null;
+        }
+        return pages[index];
+    }
+
+    private byte[] getOrCreatePage(int page) {
+        if (pages == null) {
+            pages = new byte[1][];
+            firstPage = page;
+        } else if (page < firstPage) {
+            byte[][] grown = new byte[pages.length + firstPage - page][];
+            System.arraycopy(pages, 0, grown, firstPage - page, pages.length);
+            pages = grown;
+            firstPage = page;
+        } else if (page >= firstPage + pages.length) {
+            byte[][] grown = new byte[page - firstPage + 1][];
+            System.arraycopy(pages, 0, grown, 0, pages.length);
+            pages = grown;
+        }
+
+        int index = page - firstPage;
+        if (pages[index] == null) {
+            pages[index] = new byte[DAYS_PER_PAGE];
+        }
+        return pages[index];
+    }
+
+    /**
+     * Get the style index of a date
+     *
+     * @param epochDay
+     * @return index of the style, NO_STYLE if the date is not decorated
+     */
+    public int getStyleIndex(int epochDay) {
+        byte[] days = getPage(pageOf(epochDay));
+        if (days == null) {
+            return NO_STYLE;
+        }
+        return days[epochDay & (DAYS_PER_PAGE - 1)] & 0xFF;
+    }
+
+    /**
+     * Get the style of a date
+     *
+     * @param epochDay
+     * @return the style, null if the date is not decorated
+     */
+    public DecorationStyle getStyleOfDate(int epochDay) {
+        return getStyle(getStyleIndex(epochDay));
+    }
+
+    /**
+     * Decorate a date
+     *
+     * @param epochDay
+     * @param styleIndex index returned by {@link #addStyle(DecorationStyle)},
+     *                   or NO_STYLE to remove the decoration
+     */
+    public void setStyleIndex(int epochDay, int styleIndex) {
+        setStyleIndex(epochDay, epochDay, styleIndex);
+    }
+
+    /**
+     * Decorate all the dates from fromEpochDay to toEpochDay, inclusive
+     *
+     * @param fromEpochDay
+     * @param toEpochDay
+     * @param styleIndex   index returned by {@link #addStyle(DecorationStyle)},
+     *                     or NO_STYLE to remove the decoration
+     */
+    public void setStyleIndex(int fromEpochDay, int toEpochDay, int styleIndex) {
+        if (styleIndex < NO_STYLE || styleIndex > styles.size()) {
+            throw new IllegalArgumentException("Unknown style " + styleIndex);
+        }
+
+        for (int page = pageOf(fromEpochDay); page <= pageOf(toEpochDay); page++) {
+            int pageStart = page << PAGE_SHIFT;
+            int from = Math.max(fromEpochDay, pageStart) - pageStart;
+            int to = Math.min(toEpochDay, pageStart + DAYS_PER_PAGE - 1) - pageStart;
+
+            if (styleIndex == NO_STYLE) {
+                byte[] days = getPage(page);
+                if (days != null) {
+                    for (int day = from; day <= to; day++) {
+                        days[day] = NO_STYLE;
+                    }
+                    trimPage(page);
+                }
+            } else {
+                byte[] days = getOrCreatePage(page);
+                for (int day = from; day <= to; day++) {
+                    days[day] = (byte) styleIndex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Free the page if it has no decorated date
+     */
+    private void trimPage(int page) {
+        int index = page - firstPage;
+        byte[] days = pages[index];
+        if (days != null) {
+            for (byte styleIndex : days) {
+                if (styleIndex != NO_STYLE) {
+                    return;
+                }
+            }
+            pages[index] = null;
+        }
+    }
+
+    /**
+     * Remove the decoration of all the dates. The palette is kept
+     */
+    public void clearDates() {
+        pages = null;
+        firstPage = 0;
+    }
+
+    public boolean isEmpty() {
+        if (pages != null) {
+            for (byte[] days : pages) {
+                if (days != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if a date from fromEpochDay to toEpochDay is decorated. Only
+     * checks which pages are allocated, so it can return true for a range
+     * without decorated date
+     *
+     * @param fromEpochDay
+     * @param toEpochDay
+     * @return
+     */
+    public boolean mayIntersect(int fromEpochDay, int toEpochDay) {
+        for (int page = pageOf(fromEpochDay); page <= pageOf(toEpochDay); page++) {
+            if (getPage(page) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public DecorationProvider getProvider() {
+        return providedStyles == null ? null : providedStyles.provider;
+    }
+
+    /**
+     * Set the provider asked for the styles of the pages shown. Styles of
+     * the previous provider are forgotten
+     *
+     * @param provider null to remove the provider
+     */
+    public void setProvider(DecorationProvider provider) {
+        providedStyles = provider == null ? null : new ProvidedStyles(provider);
+    }
+
+    /**
+     * Forget the styles provided for all the pages, the provider is asked
+     * again when the pages are shown
+     */
+    public void invalidateProvidedStyles() {
+        if (providedStyles != null) {
+            providedStyles.invalidate(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Forget the styles provided for the pages showing a date from
+     * fromEpochDay to toEpochDay
+     *
+     * @param fromEpochDay
+     * @param toEpochDay
+     */
+    public void invalidateProvidedStyles(int fromEpochDay, int toEpochDay) {
+        if (providedStyles != null) {
+            providedStyles.invalidate(fromEpochDay, toEpochDay);
+        }
+    }
+
+    /**
+     * Get the style index of every date of a page, from the provider and
+     * from the styles set on dates. The provider is only asked if it did not
+     * provide this page yet
+     *
+     * @param monthPage
+     * @return style index of each position of monthPage, or null if no date
+     * of the page can be decorated
+     */
+    public int[] getPageStyles(MonthPage monthPage) {
+        int firstEpochDay = monthPage.getFirstEpochDay();
+        int lastEpochDay = monthPage.getLastEpochDay();
+        boolean hasDates = mayIntersect(firstEpochDay, lastEpochDay);
+        if (!hasDates && providedStyles == null) {
+            return null;
+        }
+
+        int size = monthPage.size();
+        int[] pageStyles;
+        if (providedStyles != null) {
+            pageStyles = providedStyles.get(monthPage, styles.size()).clone();
+        } else {
+            pageStyles = new int[size];
+        }
+
+        if (hasDates) {
+            for (int position = 0; position < size; position++) {
+                int styleIndex = getStyleIndex(monthPage.getEpochDay(position));
+                if (styleIndex != NO_STYLE) {
+                    pageStyles[position] = styleIndex;
+                }
+            }
+        }
+        return pageStyles;
+    }
+
+    /**
+     * Styles given by a provider, remembered per page
+     */
+    private static final class ProvidedStyles {
+
+        /**
+         * Number of pages remembered
+         */
+        private static final int MAX_PAGES = 32;
+
+        final DecorationProvider provider;
+
+        /**
+         * Styles of each page, keyed by first epoch day and size of the page
+         */
+        private final Map<Long, int[]> pages = new LinkedHashMap<Long, int[]>(
+                MAX_PAGES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+                return size() > MAX_PAGES;
+            }
+        };
+
+        /**
+         * Incremented on each invalidation, styles provided meanwhile are
+         * not remembered
+         */
+        private int generation;
+
+        ProvidedStyles(DecorationProvider provider) {
+            this.provider = provider;
+        }
+
+        private static long getKey(int firstEpochDay, int size) {
+            return ((long) firstEpochDay << 8) | size;
+        }
+
+        /**
+         * Get the styles of a page, asking the provider if needed. The
+         * provider is called without holding the lock, so a slow provider
+         * does not block the other thread. If both threads ask for the same
+         * page, the first styles remembered are used
+         *
+         * @param monthPage
+         * @param styleCount number of styles in the palette
+         * @return styles of the page, must not be modified
+         */
+        int[] get(MonthPage monthPage, int styleCount) {
+            Long key = getKey(monthPage.getFirstEpochDay(), monthPage.size());
+            int startGeneration;
+            synchronized (this) {
+                int[] styles = pages.get(key);
+                if (styles != null) {
+                    return styles;
+                }
+                startGeneration = generation;
+            }
+
+            int[] styles = new int[monthPage.size()];
+            provider.provideDecorationStyles(monthPage, styles);
+
+            for (int styleIndex : styles) {
+                if (styleIndex < NO_STYLE || styleIndex > styleCount) {
+                    throw new IllegalArgumentException("Unknown style " + styleIndex);
+                }
+            }
+
+            synchronized (this) {
+                // Styles provided before an invalidation may be outdated,
+                // use them this time only
+                if (generation != startGeneration) {
+                    return styles;
+                }
+                int[] existing = pages.get(key);
+                if (existing != null) {
+                    return existing;
+                }
+                pages.put(key, styles);
+                return styles;
+            }
+        }
+
+        synchronized void invalidate(int fromEpochDay, int toEpochDay) {
+            generation++;
+            Iterator<Long> iterator = pages.keySet().iterator();
+            while (iterator.hasNext()) {
+                long key = iterator.next();
+                int firstEpochDay = (int) (key >> 8);
+                int lastEpochDay = firstEpochDay + (int) (key & 0xFF) - 1;
+                if (firstEpochDay <= toEpochDay && lastEpochDay >= fromEpochDay) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.roomorama.caldroid;
 
+import android.content.Context;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.view.LayoutInflater;
@@ -22,11 +23,14 @@ import com.caldroid.R;
  */
 public class DateGridFragment extends Fragment {
     private GridView gridView;
+    private MonthView monthView;
     private CaldroidGridAdapter gridAdapter;
     private OnItemClickListener onItemClickListener;
     private OnItemLongClickListener onItemLongClickListener;
     private int gridViewRes = 0;
     private int themeResource = 0;
+    private boolean useMonthView = false;
+    private MonthView.OnCellClickListener onCellClickListener;
 
     public OnItemClickListener getOnItemClickListener() {
         return onItemClickListener;
@@ -60,6 +64,59 @@ public class DateGridFragment extends Fragment {
         this.gridViewRes = gridViewRes;
     }
 
+    /**
+     * MonthView of this fragment, only available when useMonthView is true
+     *
+     * @return
+     */
+    public MonthView getMonthView() {
+        return monthView;
+    }
+
+    /**
+     * Draw the dates with a single MonthView instead of a GridView. Must be
+     * called before the fragment is attached
+     *
+     * @param useMonthView
+     */
+    public void setUseMonthView(boolean useMonthView) {
+        this.useMonthView = useMonthView;
+    }
+
+    public int getThemeResource() {
+        return themeResource;
+    }
+
+    /**
+     * Switch theme. The grid view or MonthView already created gets the grid
+     * view style of the new theme, its cells are restyled by the adapter when
+     * they are bound again
+     *
+     * @param themeResource
+     */
+    public void setThemeResource(int themeResource) {
+        if (this.themeResource == themeResource) {
+            return;
+        }
+        this.themeResource = themeResource;
+
+        if (monthView != null) {
+            ThemeCache.applyStyle(monthView, themeResource, R.attr.styleCaldroidGridView);
+            monthView.invalidate();
+        }
+        if (gridView != null) {
+            ThemeCache.applyStyle(gridView, themeResource, R.attr.styleCaldroidGridView);
+        }
+    }
+
+    public MonthView.OnCellClickListener getOnCellClickListener() {
+        return onCellClickListener;
+    }
+
+    public void setOnCellClickListener(MonthView.OnCellClickListener onCellClickListener) {
+        this.onCellClickListener = onCellClickListener;
+    }
+
     private void setupGridView() {
 
 
@@ -78,10 +135,70 @@ public class DateGridFragment extends Fragment {
         }
     }
 
+    /**
+     * Rebind only the cells at positions, after their state changed. Cells
+     * that are not shown are refreshed when they are shown
+     *
+     * @param positions
+     */
+    public void refreshCells(int[] positions) {
+        if (positions.length == 0) {
+            return;
+        }
+
+        // MonthView draws all the cells at once
+        if (monthView != null) {
+            monthView.invalidate();
+            return;
+        }
+
+        if (gridView == null || gridAdapter == null) {
+            return;
+        }
+
+        int firstVisiblePosition = gridView.getFirstVisiblePosition();
+        for (int position : positions) {
+            View cell = gridView.getChildAt(position - firstVisiblePosition);
+            if (cell == null) {
+                continue;
+            }
+
+            // Adapter that does not reuse the cell view needs a full refresh
+            if (gridAdapter.getView(position, cell, gridView) != cell) {
+                gridAdapter.notifyDataSetChanged();
+                return;
+            }
+        }
+    }
+
+    private void setupMonthView() {
+        if (gridAdapter != null) {
+            monthView.setAdapter(gridAdapter);
+        }
+
+        if (onCellClickListener != null) {
+            monthView.setOnCellClickListener(onCellClickListener);
+        }
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
+        return createPageView(getActivity(), inflater, container);
+    }
 
+    /**
+     * Create the page view, or detach and reuse the one created before. This
+     * does not need the fragment to be attached, so pages can be hosted
+     * directly by a PagerAdapter
+     *
+     * @param context   context used to apply the theme
+     * @param inflater
+     * @param container
+     * @return
+     */
+    public View createPageView(Context context, LayoutInflater inflater,
+                               ViewGroup container) {
         // If gridViewRes is not valid, use default fragment layout
         if (gridViewRes == 0) {
             gridViewRes = R.layout.date_grid_fragment;
@@ -93,8 +210,25 @@ public class DateGridFragment extends Fragment {
             }
         }
 
+        if (useMonthView) {
+            if (monthView == null) {
+                LayoutInflater localInflater = CaldroidFragment.getThemeInflater(context,
+                        inflater, themeResource);
+                monthView = (MonthView) localInflater.inflate(R.layout.month_view,
+                        container, false);
+                setupMonthView();
+            } else {
+                ViewGroup parent = (ViewGroup) monthView.getParent();
+                if (parent != null) {
+                    parent.removeView(monthView);
+                }
+            }
+
+            return monthView;
+        }
+
         if (gridView == null) {
-            LayoutInflater localInflater = CaldroidFragment.getThemeInflater(getActivity(),
+            LayoutInflater localInflater = CaldroidFragment.getThemeInflater(context,
                     inflater, themeResource);
             gridView = (GridView) localInflater.inflate(gridViewRes, container, false);
             setupGridView();
@@ -0,0 +1,346 @@
+package com.roomorama.caldroid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import hirondelle.date4j.DateTime;
+
+/**
+ * DateRangeSet is a set of dates stored as sorted, non-overlapping ranges of
+ * epoch days (see {@link CalendarHelper#getEpochDay(int, int, int)}). Both
+ * ends of a range are inclusive. Adjacent and overlapping ranges are merged
+ * when added, so a whole season is stored as a single range.
+ * <p/>
+ * Membership checks use binary search, and are O(log n) in the number of
+ * ranges.
+ */
+public final class DateRangeSet {
+
+    private int[] starts;
+    private int[] ends;
+    private int rangeCount;
+
+    public DateRangeSet() {
+        starts = new int[4];
+        ends = new int[4];
+    }
+
+    /**
+     * Create a copy of other
+     *
+     * @param other
+     */
+    public DateRangeSet(DateRangeSet other) {
+        int capacity = Math.max(4, other.rangeCount);
+        starts = new int[capacity];
+        ends = new int[capacity];
+        rangeCount = other.rangeCount;
+        System.arraycopy(other.starts, 0, starts, 0, rangeCount);
+        System.arraycopy(other.ends, 0, ends, 0, rangeCount);
+    }
+
+    /**
+     * Create a set from a list of dates. Null dates are ignored
+     *
+     * @param dateTimes
+     * @return
+     */
+    public static DateRangeSet fromDateTimes(Iterable<DateTime> dateTimes) {
+        DateRangeSet set = new DateRangeSet();
+        if (dateTimes != null) {
+            for (DateTime dateTime : dateTimes) {
+                if (dateTime != null) {
+                    set.add(CalendarHelper.convertDateTimeToEpochDay(dateTime));
+                }
+            }
+        }
+        return set;
+    }
+
+    public boolean isEmpty() {
+        return rangeCount == 0;
+    }
+
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    /**
+     * @param index
+     * @return first epoch day of the range at index
+     */
+    public int getRangeStart(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    /**
+     * @param index
+     * @return last epoch day of the range at index, inclusive
+     */
+    public int getRangeEnd(int index) {
+        checkIndex(index);
+        return ends[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= rangeCount) {
+            throw new IndexOutOfBoundsException("Invalid range index " + index
+                    + ", range count is " + rangeCount);
+        }
+    }
+
+    /**
+     * @return number of days in the set
+     */
+    public long getDayCount() {
+        long count = 0;
+        for (int i = 0; i < rangeCount; i++) {
+            count += (long) ends[i] - starts[i] + 1;
+        }
+        return count;
+    }
+
+    /**
+     * Get index of the last range that starts on or before epochDay
+     *
+     * @param epochDay
+     * @return index, or -1 if all ranges start after epochDay
+     */
+    private int floorIndex(long epochDay) {
+        int low = 0;
+        int high = rangeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    public boolean contains(int epochDay) {
+        int index = floorIndex(epochDay);
+        return index >= 0 && ends[index] >= epochDay;
+    }
+
+    public boolean contains(DateTime dateTime) {
+        return dateTime != null
+                && contains(CalendarHelper.convertDateTimeToEpochDay(dateTime));
+    }
+
+    /**
+     * Check if any date from fromEpochDay to toEpochDay is in the set
+     *
+     * @param fromEpochDay
+     * @param toEpochDay
+     * @return
+     */
+    public boolean intersects(int fromEpochDay, int toEpochDay) {
+        int index = floorIndex(toEpochDay);
+        return index >= 0 && ends[index] >= fromEpochDay;
+    }
+
+    public void add(int epochDay) {
+        addRange(epochDay, epochDay);
+    }
+
+    /**
+     * Add all the dates from fromEpochDay to toEpochDay, inclusive. Ranges
+     * that overlap or touch the new range are merged with it
+     *
+     * @param fromEpochDay
+     * @param toEpochDay
+     */
+    public void addRange(int fromEpochDay, int toEpochDay) {
+        checkRange(fromEpochDay, toEpochDay);
+
+        // First range to merge: the range before fromEpochDay if it touches
+        // the new range
+        int first = floorIndex(fromEpochDay);
+        if (first < 0 || (long) ends[first] + 1 < fromEpochDay) {
+            first++;
+        }
+
+        // Last range to merge: the last range that starts on or before the
+        // day after toEpochDay
+        int last = floorIndex((long) toEpochDay + 1);
+
+        if (first > last) {
+            replaceRanges(first, first - 1, fromEpochDay, toEpochDay);
+        } else {
+            replaceRanges(first, last, Math.min(fromEpochDay, starts[first]),
+                    Math.max(toEpochDay, ends[last]));
+        }
+    }
+
+    public void remove(int epochDay) {
+        removeRange(epochDay, epochDay);
+    }
+
+    /**
+     * Remove all the dates from fromEpochDay to toEpochDay, inclusive. Ranges
+     * that partly overlap are cut
+     *
+     * @param fromEpochDay
+     * @param toEpochDay
+     */
+    public void removeRange(int fromEpochDay, int toEpochDay) {
+        checkRange(fromEpochDay, toEpochDay);
+
+        int first = floorIndex(fromEpochDay);
+        if (first < 0 || ends[first] < fromEpochDay) {
+            first++;
+        }
+        int last = floorIndex(toEpochDay);
+        if (first > last) {
+            return;
+        }
+
+        boolean keepHead = starts[first] < fromEpochDay;
+        boolean keepTail = ends[last] > toEpochDay;
+        int headStart = starts[first];
+        int tailEnd = ends[last];
+
+        if (keepHead && keepTail) {
+            replaceRanges(first, last, headStart, fromEpochDay - 1);
+            replaceRanges(first + 1, first, toEpochDay + 1, tailEnd);
+        } else if (keepHead) {
+            replaceRanges(first, last, headStart, fromEpochDay - 1);
+        } else if (keepTail) {
+            replaceRanges(first, last, toEpochDay + 1, tailEnd);
+        } else {
+            removeRanges(first, last);
+        }
+    }
+
+    private static void checkRange(int fromEpochDay, int toEpochDay) {
+        if (fromEpochDay > toEpochDay) {
+            throw new IllegalArgumentException("fromEpochDay " + fromEpochDay
+                    + " is after toEpochDay " + toEpochDay);
+        }
+    }
+
+    /**
+     * Replace ranges first to last, inclusive, by a single range. If last is
+     * first - 1, the range is inserted at first
+     */
+    private void replaceRanges(int first, int last, int start, int end) {
+        int removed = last - first + 1;
+        int newCount = rangeCount - removed + 1;
+
+        if (newCount > starts.length) {
+            int capacity = Math.max(newCount, starts.length * 2);
+            starts = copyOf(starts, capacity);
+            ends = copyOf(ends, capacity);
+        }
+
+        int tail = rangeCount - last - 1;
+        System.arraycopy(starts, last + 1, starts, first + 1, tail);
+        System.arraycopy(ends, last + 1, ends, first + 1, tail);
+        starts[first] = start;
+        ends[first] = end;
+        rangeCount = newCount;
+    }
+
+    /**
+     * Remove ranges first to last, inclusive
+     */
+    private void removeRanges(int first, int last) {
+        int tail = rangeCount - last - 1;
+        System.arraycopy(starts, last + 1, starts, first, tail);
+        System.arraycopy(ends, last + 1, ends, first, tail);
+        rangeCount -= last - first + 1;
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    public void clear() {
+        rangeCount = 0;
+    }
+
+    /**
+     * Export ranges as pairs of epoch days: start of first range, end of first
+     * range, start of second range...
+     *
+     * @return
+     */
+    public int[] toRangeArray() {
+        int[] array = new int[rangeCount * 2];
+        for (int i = 0; i < rangeCount; i++) {
+            array[i * 2] = starts[i];
+            array[i * 2 + 1] = ends[i];
+        }
+        return array;
+    }
+
+    /**
+     * Create a list with all the dates of the set, in ascending order. The
+     * list is not backed by the set
+     *
+     * @return
+     */
+    public ArrayList<DateTime> toDateTimeList() {
+        long dayCount = getDayCount();
+        ArrayList<DateTime> dateTimes = new ArrayList<DateTime>(
+                (int) Math.min(dayCount, Integer.MAX_VALUE));
+        for (int i = 0; i < rangeCount; i++) {
+            for (int epochDay = starts[i]; epochDay <= ends[i]; epochDay++) {
+                dateTimes.add(CalendarHelper.convertEpochDayToDateTime(epochDay));
+                if (epochDay == Integer.MAX_VALUE) {
+                    break;
+                }
+            }
+        }
+        return dateTimes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DateRangeSet)) {
+            return false;
+        }
+
+        DateRangeSet other = (DateRangeSet) o;
+        if (rangeCount != other.rangeCount) {
+            return false;
+        }
+        for (int i = 0; i < rangeCount; i++) {
+            if (starts[i] != other.starts[i] || ends[i] != other.ends[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toRangeArray());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < rangeCount; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(CalendarHelper.convertEpochDayToDateTime(starts[i])
+                    .format("YYYY-MM-DD"));
+            if (ends[i] != starts[i]) {
+                builder.append("..").append(CalendarHelper
+                        .convertEpochDayToDateTime(ends[i]).format("YYYY-MM-DD"));
+            }
+        }
+        return builder.append(']').toString();
+    }
+}
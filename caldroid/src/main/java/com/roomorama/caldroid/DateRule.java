@@ -0,0 +1,216 @@
+package com.roomorama.caldroid;
+
+import java.util.List;
+
+import hirondelle.date4j.DateTime;
+
+/**
+ * DateRule describes a recurring set of dates, such as "every Saturday and
+ * Sunday" or "the last Friday of every month", without listing the dates.
+ * Rules are only evaluated for the dates of the pages that are shown or
+ * prefetched, so they cost the same whatever the number of dates they match.
+ * <p/>
+ * Rules must be immutable, because they are evaluated on the prefetch thread
+ * too. The rules created by the factory methods of this class are.
+ */
+public abstract class DateRule {
+
+    /**
+     * Check if the rule matches a date
+     *
+     * @param epochDay see {@link CalendarHelper#getEpochDay(int, int, int)}
+     * @return
+     */
+    public abstract boolean matches(int epochDay);
+
+    public boolean matches(DateTime dateTime) {
+        return matches(CalendarHelper.convertDateTimeToEpochDay(dateTime));
+    }
+
+    /**
+     * Check if any of the rules matches a date
+     *
+     * @param rules
+     * @param epochDay
+     * @return
+     */
+    public static boolean matchesAny(List<DateRule> rules, int epochDay) {
+        for (int i = 0; i < rules.size(); i++) {
+            if (rules.get(i).matches(epochDay)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Limit this rule to the dates from fromDateTime to toDateTime, inclusive
+     *
+     * @param fromDateTime first date, null for no limit
+     * @param toDateTime   last date, null for no limit
+     * @return a new rule
+     */
+    public DateRule between(DateTime fromDateTime, DateTime toDateTime) {
+        return new BoundedRule(this,
+                fromDateTime == null ? Integer.MIN_VALUE
+                        : CalendarHelper.convertDateTimeToEpochDay(fromDateTime),
+                toDateTime == null ? Integer.MAX_VALUE
+                        : CalendarHelper.convertDateTimeToEpochDay(toDateTime));
+    }
+
+    /**
+     * Limit this rule to the dates before dateTime, exclusive
+     *
+     * @param dateTime
+     * @return a new rule
+     */
+    public DateRule before(DateTime dateTime) {
+        return between(null, dateTime.minusDays(1));
+    }
+
+    /**
+     * Limit this rule to the dates after dateTime, exclusive
+     *
+     * @param dateTime
+     * @return a new rule
+     */
+    public DateRule after(DateTime dateTime) {
+        return between(dateTime.plusDays(1), null);
+    }
+
+    /**
+     * Every week on the given days
+     *
+     * @param weekDays CaldroidFragment.SUNDAY to CaldroidFragment.SATURDAY
+     * @return
+     */
+    public static DateRule weekDays(int... weekDays) {
+        int mask = 0;
+        for (int weekDay : weekDays) {
+            if (weekDay < CaldroidFragment.SUNDAY
+                    || weekDay > CaldroidFragment.SATURDAY) {
+                throw new IllegalArgumentException("Invalid week day " + weekDay);
+            }
+            mask |= 1 << weekDay;
+        }
+        return new WeekDayRule(mask);
+    }
+
+    /**
+     * Every month on the given days of month. Negative days count from the end
+     * of the month, -1 is the last day of the month
+     *
+     * @param days 1 to 31, or -1 to -31
+     * @return
+     */
+    public static DateRule daysOfMonth(int... days) {
+        long mask = 0;
+        for (int day : days) {
+            if (day == 0 || day > 31 || day < -31) {
+                throw new IllegalArgumentException("Invalid day of month " + day);
+            }
+            // Bits 1 to 31 for days from start, 33 to 63 for days from end
+            mask |= 1L << (day > 0 ? day : 32 - day);
+        }
+        return new DayOfMonthRule(mask);
+    }
+
+    /**
+     * Every month on the n-th given week day, e.g. the 2nd Tuesday. Negative n
+     * counts from the end of the month, -1 is the last week day of the month
+     *
+     * @param n       1 to 5, or -1 to -5
+     * @param weekDay CaldroidFragment.SUNDAY to CaldroidFragment.SATURDAY
+     * @return
+     */
+    public static DateRule nthWeekDayOfMonth(int n, int weekDay) {
+        if (n == 0 || n > 5 || n < -5) {
+            throw new IllegalArgumentException("Invalid week day number " + n);
+        }
+        if (weekDay < CaldroidFragment.SUNDAY
+                || weekDay > CaldroidFragment.SATURDAY) {
+            throw new IllegalArgumentException("Invalid week day " + weekDay);
+        }
+        return new NthWeekDayRule(n, weekDay);
+    }
+
+    private static class WeekDayRule extends DateRule {
+        private final int mask;
+
+        WeekDayRule(int mask) {
+            this.mask = mask;
+        }
+
+        @Override
+        public boolean matches(int epochDay) {
+            return (mask & (1 << CalendarHelper.getWeekDayOfEpochDay(epochDay))) != 0;
+        }
+    }
+
+    private static class DayOfMonthRule extends DateRule {
+        private final long mask;
+
+        DayOfMonthRule(long mask) {
+            this.mask = mask;
+        }
+
+        @Override
+        public boolean matches(int epochDay) {
+            int packedDate = CalendarHelper.convertEpochDayToPackedDate(epochDay);
+            int day = packedDate % 100;
+            if ((mask & (1L << day)) != 0) {
+                return true;
+            }
+
+            // Day counted from the end of month, 1 for the last day
+            int numDays = CalendarHelper.getNumDaysInMonth(packedDate / 10000,
+                    packedDate / 100 % 100);
+            return (mask & (1L << (32 + numDays - day + 1))) != 0;
+        }
+    }
+
+    private static class NthWeekDayRule extends DateRule {
+        private final int n;
+        private final int weekDay;
+
+        NthWeekDayRule(int n, int weekDay) {
+            this.n = n;
+            this.weekDay = weekDay;
+        }
+
+        @Override
+        public boolean matches(int epochDay) {
+            if (CalendarHelper.getWeekDayOfEpochDay(epochDay) != weekDay) {
+                return false;
+            }
+
+            int packedDate = CalendarHelper.convertEpochDayToPackedDate(epochDay);
+            int day = packedDate % 100;
+            if (n > 0) {
+                return (day - 1) / 7 + 1 == n;
+            }
+
+            int numDays = CalendarHelper.getNumDaysInMonth(packedDate / 10000,
+                    packedDate / 100 % 100);
+            return (numDays - day) / 7 + 1 == -n;
+        }
+    }
+
+    private static class BoundedRule extends DateRule {
+        private final DateRule rule;
+        private final int fromEpochDay;
+        private final int toEpochDay;
+
+        BoundedRule(DateRule rule, int fromEpochDay, int toEpochDay) {
+            this.rule = rule;
+            this.fromEpochDay = fromEpochDay;
+            this.toEpochDay = toEpochDay;
+        }
+
+        @Override
+        public boolean matches(int epochDay) {
+            return epochDay >= fromEpochDay && epochDay <= toEpochDay
+                    && rule.matches(epochDay);
+        }
+    }
+}
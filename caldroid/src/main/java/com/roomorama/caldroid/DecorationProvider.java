@@ -0,0 +1,26 @@
+package com.roomorama.caldroid;
+
+/**
+ * DecorationProvider gives the decoration styles of dates on demand, instead
+ * of the client setting every decorated date up front. Caldroid only asks for
+ * the pages being shown or prefetched, and remembers the styles of a page
+ * until CaldroidFragment.invalidateDecorations() is called.
+ * <p/>
+ * When PREFETCH_MONTHS is set, the provider is also called on the prefetch
+ * thread, so it must not touch views and must be safe to call from any
+ * thread. Caldroid holds no lock while calling it, the UI thread and the
+ * prefetch thread can ask for the same page at the same time. An exception
+ * thrown on the prefetch thread is rethrown on the UI thread.
+ */
+public interface DecorationProvider {
+
+    /**
+     * Set the decoration style of the dates of a page
+     *
+     * @param monthPage dates of the page
+     * @param styles    style of each position of monthPage, all
+     *                  DateDecorations.NO_STYLE initially. Set indexes
+     *                  returned by CaldroidFragment.addDecorationStyle()
+     */
+    void provideDecorationStyles(MonthPage monthPage, int[] styles);
+}
@@ -0,0 +1,56 @@
+package com.roomorama.caldroid;
+
+/**
+ * DecorationStyle is an entry of the palette of DateDecorations: a
+ * background and a text color, given as resources. Dates refer to a style by
+ * its index in the palette, so thousands of decorated dates share a few
+ * styles.
+ */
+public final class DecorationStyle {
+
+    private final int backgroundResource;
+    private final int textColorResource;
+
+    /**
+     * @param backgroundResource drawable resource of the background, 0 to
+     *                           keep the background of the theme
+     * @param textColorResource  color resource of the text, 0 to keep the
+     *                           text color of the theme
+     */
+    public DecorationStyle(int backgroundResource, int textColorResource) {
+        this.backgroundResource = backgroundResource;
+        this.textColorResource = textColorResource;
+    }
+
+    /**
+     * @return drawable resource, 0 if the style has no background
+     */
+    public int getBackgroundResource() {
+        return backgroundResource;
+    }
+
+    /**
+     * @return color resource, 0 if the style has no text color
+     */
+    public int getTextColorResource() {
+        return textColorResource;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DecorationStyle)) {
+            return false;
+        }
+        DecorationStyle other = (DecorationStyle) o;
+        return backgroundResource == other.backgroundResource
+                && textColorResource == other.textColorResource;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * backgroundResource + textColorResource;
+    }
+}
@@ -0,0 +1,180 @@
+package com.roomorama.caldroid;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.caldroid.R;
+
+import java.util.Map;
+
+import hirondelle.date4j.DateTime;
+
+/**
+ * MonthListAdapter provides the months of the vertical scroll mode of
+ * CaldroidFragment. Each row contains the month title and a MonthView. Rows
+ * are recycled by RecyclerView, and each row keeps its own
+ * CaldroidGridAdapter, which is moved to the month of the row when it is
+ * bound. Scrolling does not inflate new views once the visible rows are
+ * created.
+ * <p/>
+ * The list covers MONTHS_AROUND months before and after the initial month.
+ * Item id of a month is year * 12 + month - 1, so it stays the same for the
+ * same month.
+ */
+public class MonthListAdapter extends RecyclerView.Adapter<MonthListAdapter.MonthViewHolder> {
+
+    /**
+     * Number of months before and after the initial month
+     */
+    public static final int MONTHS_AROUND = 1200;
+
+    private final CaldroidFragment caldroidFragment;
+    private final int firstMonthIndex;
+    private CaldroidData caldroidData;
+    private Map<String, Object> extraData;
+
+    /**
+     * @param caldroidFragment fragment that creates the grid adapters and
+     *                         handles clicks
+     * @param month            initial month
+     * @param year             initial year
+     */
+    public MonthListAdapter(CaldroidFragment caldroidFragment, int month, int year) {
+        this.caldroidFragment = caldroidFragment;
+        this.firstMonthIndex = getMonthIndex(month, year) - MONTHS_AROUND;
+        setHasStableIds(true);
+    }
+
+    private static int getMonthIndex(int month, int year) {
+        return year * 12 + month - 1;
+    }
+
+    /**
+     * Get position of a month in the list, clamped to the months of the list
+     *
+     * @param month
+     * @param year
+     * @return
+     */
+    public int getPosition(int month, int year) {
+        int position = getMonthIndex(month, year) - firstMonthIndex;
+        return Math.max(0, Math.min(getItemCount() - 1, position));
+    }
+
+    public int getMonth(int position) {
+        return (firstMonthIndex + position) % 12 + 1;
+    }
+
+    public int getYear(int position) {
+        return (firstMonthIndex + position) / 12;
+    }
+
+    public CaldroidData getCaldroidData() {
+        return caldroidData;
+    }
+
+    /**
+     * Set data of all the months and rebind the visible rows
+     *
+     * @param caldroidData
+     * @param extraData
+     */
+    public void setCaldroidData(CaldroidData caldroidData,
+                                Map<String, Object> extraData) {
+        this.caldroidData = caldroidData;
+        this.extraData = extraData;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getItemCount() {
+        return MONTHS_AROUND * 2 + 1;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return firstMonthIndex + position;
+    }
+
+    @Override
+    public MonthViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        // Rows use the current theme of Caldroid, which can differ from the
+        // theme the parent was inflated with
+        Context context = parent.getContext();
+        int themeResource = caldroidFragment.getThemeResource();
+        View itemView = CaldroidFragment.getThemeInflater(context,
+                LayoutInflater.from(context), themeResource)
+                .inflate(R.layout.month_list_item, parent, false);
+
+        MonthViewHolder holder = new MonthViewHolder(itemView);
+        holder.themeResource = themeResource;
+        holder.monthView.setMeasureSingleRow(false);
+        holder.monthView.setOnCellClickListener(caldroidFragment
+                .getDateCellClickListener());
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(MonthViewHolder holder, int position) {
+        int month = getMonth(position);
+        int year = getYear(position);
+
+        if (holder.gridAdapter == null) {
+            holder.gridAdapter = caldroidFragment.getNewDatesGridAdapter(month, year);
+            holder.gridAdapter.setMonthPrefetcher(caldroidFragment.getMonthPrefetcher());
+            holder.monthView.setAdapter(holder.gridAdapter);
+        } else {
+            holder.gridAdapter.setAdapterDateTime(
+                    new DateTime(year, month, 1, 0, 0, 0, 0));
+        }
+
+        CaldroidGridAdapter gridAdapter = holder.gridAdapter;
+        if (caldroidData != null) {
+            gridAdapter.setCaldroidData(caldroidData);
+
+            // Theme switched since the row was created
+            int themeResource = caldroidData.getThemeResource();
+            if (holder.themeResource != themeResource) {
+                holder.themeResource = themeResource;
+                ThemeCache.applyStyle(holder.titleTextView, themeResource,
+                        R.attr.styleCaldroidMonthName);
+                ThemeCache.applyStyle(holder.monthView, themeResource,
+                        R.attr.styleCaldroidGridView);
+            }
+        }
+        if (extraData != null) {
+            gridAdapter.setExtraData(extraData);
+        }
+        gridAdapter.updateToday();
+        gridAdapter.notifyDataSetChanged();
+
+        holder.titleTextView.setText(caldroidFragment.getMonthTitle(month, year));
+    }
+
+    /**
+     * Row of a month. The grid adapter is created on first bind and reused
+     * for other months
+     */
+    public static class MonthViewHolder extends RecyclerView.ViewHolder {
+        public final TextView titleTextView;
+        public final MonthView monthView;
+        CaldroidGridAdapter gridAdapter;
+        int themeResource;
+
+        public MonthViewHolder(View itemView) {
+            super(itemView);
+            titleTextView = (TextView) itemView
+                    .findViewById(R.id.calendar_month_list_title);
+            monthView = (MonthView) itemView
+                    .findViewById(R.id.calendar_month_view);
+        }
+
+        public CaldroidGridAdapter getGridAdapter() {
+            return gridAdapter;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.roomorama.caldroid;
+
+import java.util.ArrayList;
+
+import hirondelle.date4j.DateTime;
+
+/**
+ * MonthPage holds all the dates displayed in one page of the calendar: the
+ * dates of a month plus the dates of previous / next month that fill the
+ * first and last week. Dates are stored as epoch days (number of days since
+ * 1970-01-01), DateTime is only created when client asks for it.
+ * <p/>
+ * MonthPage is immutable, use
+ * {@link CalendarHelper#getMonthPage(int, int, int, boolean)} to get one.
+ */
+public final class MonthPage {
+    private final int month;
+    private final int year;
+    private final int startDayOfWeek;
+    private final boolean sixWeeksInCalendar;
+    private final int[] epochDays;
+    private final int leadingDays;
+    private final int numDaysInMonth;
+    private final int numDaysInPrevMonth;
+
+    MonthPage(int month, int year, int startDayOfWeek,
+              boolean sixWeeksInCalendar, int[] epochDays, int leadingDays,
+              int numDaysInMonth, int numDaysInPrevMonth) {
+        this.month = month;
+        this.year = year;
+        this.startDayOfWeek = startDayOfWeek;
+        this.sixWeeksInCalendar = sixWeeksInCalendar;
+        this.epochDays = epochDays;
+        this.leadingDays = leadingDays;
+        this.numDaysInMonth = numDaysInMonth;
+        this.numDaysInPrevMonth = numDaysInPrevMonth;
+    }
+
+    public int getMonth() {
+        return month;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getStartDayOfWeek() {
+        return startDayOfWeek;
+    }
+
+    public boolean isSixWeeksInCalendar() {
+        return sixWeeksInCalendar;
+    }
+
+    /**
+     * @return number of cells in this page, always a multiple of 7
+     */
+    public int size() {
+        return epochDays.length;
+    }
+
+    public int getRowCount() {
+        return epochDays.length / 7;
+    }
+
+    public int getEpochDay(int position) {
+        return epochDays[position];
+    }
+
+    public int getFirstEpochDay() {
+        return epochDays[0];
+    }
+
+    public int getLastEpochDay() {
+        return epochDays[epochDays.length - 1];
+    }
+
+    /**
+     * Get position of the epoch day in this page
+     *
+     * @param epochDay
+     * @return position, or -1 if the date is not displayed in this page
+     */
+    public int indexOf(int epochDay) {
+        int position = epochDay - epochDays[0];
+        if (position < 0 || position >= epochDays.length) {
+            return -1;
+        }
+        return position;
+    }
+
+    /**
+     * Check if the date at position belongs to this month, instead of
+     * previous / next month
+     *
+     * @param position
+     * @return
+     */
+    public boolean isInMonth(int position) {
+        return position >= leadingDays
+                && position < leadingDays + numDaysInMonth;
+    }
+
+    /**
+     * Get day of month of the date at position, without date math
+     *
+     * @param position
+     * @return
+     */
+    public int getDay(int position) {
+        if (position < leadingDays) {
+            return numDaysInPrevMonth - leadingDays + position + 1;
+        }
+
+        int day = position - leadingDays + 1;
+        if (day > numDaysInMonth) {
+            day -= numDaysInMonth;
+        }
+        return day;
+    }
+
+    /**
+     * Create the DateTime of the date at position
+     *
+     * @param position
+     * @return
+     */
+    public DateTime getDateTime(int position) {
+        return CalendarHelper.convertEpochDayToDateTime(epochDays[position]);
+    }
+
+    /**
+     * Create a new list contains DateTime of all dates in this page
+     *
+     * @return
+     */
+    public ArrayList<DateTime> toDateTimeList() {
+        ArrayList<DateTime> datetimeList = new ArrayList<DateTime>(
+                epochDays.length);
+        for (int epochDay : epochDays) {
+            datetimeList.add(CalendarHelper.convertEpochDayToDateTime(epochDay));
+        }
+        return datetimeList;
+    }
+}
@@ -0,0 +1,233 @@
+package com.roomorama.caldroid;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * MonthPrefetcher computes the month pages and cell states of the months
+ * around the current month on a background thread, so that swiping to
+ * another month only has to swap the adapter data on the UI thread.
+ * <p/>
+ * Results are cached per month, and are only used by an adapter if they were
+ * computed with the same CaldroidData snapshot and the same day as today.
+ * Work that has not started yet is cancelled when a new prefetch is
+ * requested, e.g. when the user changes swipe direction.
+ * <p/>
+ * Months are computed from the CaldroidData snapshot only, which owns copies
+ * of the dates and decorations, so the fragment can be modified on the UI
+ * thread meanwhile. An exception thrown while computing a month, e.g. by a
+ * DecorationProvider, is rethrown on the UI thread when an adapter asks for
+ * that month.
+ */
+public class MonthPrefetcher {
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Caldroid-prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    };
+
+    private final int monthsAround;
+    private final ExecutorService executor;
+    private final ArrayList<Future<?>> pendingTasks = new ArrayList<Future<?>>();
+    private final Map<Integer, Result> results;
+
+    private int hitCount;
+    private int missCount;
+
+    /**
+     * @param monthsAround number of months to compute before and after the
+     *                     current month
+     */
+    public MonthPrefetcher(int monthsAround) {
+        this.monthsAround = monthsAround;
+        this.executor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+
+        final int capacity = monthsAround * 4 + 2;
+        this.results = new LinkedHashMap<Integer, Result>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Result> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public int getMonthsAround() {
+        return monthsAround;
+    }
+
+    /**
+     * Compute the months around month / year in background. Months in the
+     * swipe direction are computed first. Pending work of the previous
+     * prefetch is cancelled
+     *
+     * @param month
+     * @param year
+     * @param direction     positive when swiping to next months, negative
+     *                      when swiping to previous months
+     * @param caldroidData
+     * @param todayEpochDay
+     */
+    public void prefetch(int month, int year, int direction,
+                         CaldroidData caldroidData, int todayEpochDay) {
+        cancelPendingTasks();
+
+        if (executor.isShutdown()) {
+            return;
+        }
+
+        int monthIndex = year * 12 + month - 1;
+        int step = direction < 0 ? -1 : 1;
+
+        submit(monthIndex, caldroidData, todayEpochDay);
+        for (int i = 1; i <= monthsAround; i++) {
+            submit(monthIndex + step * i, caldroidData, todayEpochDay);
+        }
+        for (int i = 1; i <= monthsAround; i++) {
+            submit(monthIndex - step * i, caldroidData, todayEpochDay);
+        }
+    }
+
+    private void submit(final int monthIndex, final CaldroidData caldroidData,
+                        final int todayEpochDay) {
+        final int month = monthIndex % 12 + 1;
+        final int year = monthIndex / 12;
+
+        synchronized (results) {
+            Result result = results.get(monthIndex);
+            if (result != null && result.matches(month, year, caldroidData,
+                    todayEpochDay)) {
+                return;
+            }
+        }
+
+        pendingTasks.add(executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                MonthPage monthPage = CalendarHelper.getMonthPage(month,
+                        year, caldroidData.getStartDayOfWeek(),
+                        caldroidData.isSixWeeksInCalendar());
+                byte[] cellStates = null;
+                RuntimeException error = null;
+                try {
+                    cellStates = caldroidData.computeCellStates(monthPage,
+                            todayEpochDay);
+                } catch (RuntimeException e) {
+                    // Executor would swallow it, keep it for the UI thread
+                    error = e;
+                }
+
+                synchronized (results) {
+                    results.put(monthIndex, new Result(monthPage,
+                            caldroidData, todayEpochDay, cellStates, error));
+                }
+            }
+        }));
+    }
+
+    /**
+     * Cancel work that has not started yet
+     */
+    public void cancelPendingTasks() {
+        for (Future<?> task : pendingTasks) {
+            task.cancel(false);
+        }
+        pendingTasks.clear();
+    }
+
+    /**
+     * Get the cell states computed in background for monthPage
+     *
+     * @param monthPage
+     * @param caldroidData
+     * @param todayEpochDay
+     * @return cell states, or null if they are not computed yet or computed
+     * with other data
+     * @throws RuntimeException if computing the cell states failed on the
+     *                          prefetch thread
+     */
+    public byte[] getCellStates(MonthPage monthPage, CaldroidData caldroidData,
+                                int todayEpochDay) {
+        int monthIndex = monthPage.getYear() * 12 + monthPage.getMonth() - 1;
+
+        synchronized (results) {
+            Result result = results.get(monthIndex);
+            if (result != null && result.caldroidData == caldroidData
+                    && result.todayEpochDay == todayEpochDay
+                    && result.monthPage.getStartDayOfWeek() == monthPage.getStartDayOfWeek()
+                    && result.monthPage.isSixWeeksInCalendar() == monthPage.isSixWeeksInCalendar()) {
+                if (result.error != null) {
+                    results.remove(monthIndex);
+                    throw new RuntimeException("Prefetching "
+                            + monthPage.getMonth() + "/" + monthPage.getYear()
+                            + " failed", result.error);
+                }
+                hitCount++;
+                return result.cellStates;
+            }
+            missCount++;
+            return null;
+        }
+    }
+
+    public int getHitCount() {
+        synchronized (results) {
+            return hitCount;
+        }
+    }
+
+    public int getMissCount() {
+        synchronized (results) {
+            return missCount;
+        }
+    }
+
+    /**
+     * Stop the background thread. The prefetcher can not be used afterwards
+     */
+    public void shutdown() {
+        cancelPendingTasks();
+        executor.shutdown();
+        synchronized (results) {
+            results.clear();
+        }
+    }
+
+    private static class Result {
+        final MonthPage monthPage;
+        final CaldroidData caldroidData;
+        final int todayEpochDay;
+        final byte[] cellStates;
+
+        /**
+         * Exception thrown while computing cellStates, null if none
+         */
+        final RuntimeException error;
+
+        Result(MonthPage monthPage, CaldroidData caldroidData,
+               int todayEpochDay, byte[] cellStates, RuntimeException error) {
+            this.monthPage = monthPage;
+            this.caldroidData = caldroidData;
+            this.todayEpochDay = todayEpochDay;
+            this.cellStates = cellStates;
+            this.error = error;
+        }
+
+        boolean matches(int month, int year, CaldroidData caldroidData,
+                        int todayEpochDay) {
+            return this.caldroidData == caldroidData
+                    && this.todayEpochDay == todayEpochDay
+                    && monthPage.getMonth() == month
+                    && monthPage.getYear() == year;
+        }
+    }
+}
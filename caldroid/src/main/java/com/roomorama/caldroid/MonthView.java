@@ -0,0 +1,605 @@
+package com.roomorama.caldroid;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.database.DataSetObserver;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.support.v4.widget.ExploreByTouchHelper;
+import android.text.format.DateUtils;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.accessibility.AccessibilityEvent;
+
+import com.caldroid.R;
+
+import java.util.List;
+
+/**
+ * MonthView draws all the dates of a month page on a single Canvas, instead of
+ * using a GridView with one CellView per date. It reads dates and cell states
+ * from a CaldroidGridAdapter, and uses the same theme attributes as the date
+ * grid view and cells, so it works with the existing Caldroid themes.
+ * <p/>
+ * Same as GridView, when measured with an unspecified height MonthView
+ * reports the height of a single row by default. InfiniteViewPager relies on
+ * this to compute the height of the calendar. Use setMeasureSingleRow(false)
+ * to report the height of all rows instead, e.g. in a scrolling list.
+ * <p/>
+ * Each cell is exposed to accessibility services as a virtual view, with
+ * its date, selected and disabled states. Clicks from accessibility
+ * services go to the OnCellClickListener, same as touches.
+ */
+public class MonthView extends View {
+
+    /**
+     * Informs when user clicks or long clicks on a cell
+     */
+    public interface OnCellClickListener {
+        void onCellClick(MonthView monthView, int position);
+
+        boolean onCellLongClick(MonthView monthView, int position);
+    }
+
+    private static final int COLUMNS = 7;
+
+    /**
+     * Text of day of months, to avoid creating string on every draw
+     */
+    private static final String[] DAY_STRINGS = new String[32];
+
+    static {
+        for (int i = 0; i < DAY_STRINGS.length; i++) {
+            DAY_STRINGS[i] = String.valueOf(i);
+        }
+    }
+
+    /**
+     * Drawable states of every combination of custom states, with and without
+     * pressed state. Indexed by custom state mask, pressed state is the
+     * highest bit
+     */
+    private static final int PRESSED_MASK = 1 << 4;
+    private static final int[][] STATE_SETS = new int[PRESSED_MASK * 2][];
+
+    static {
+        for (int mask = 0; mask < PRESSED_MASK; mask++) {
+            int[] customStateSet = CellView.getCustomStateSet(mask);
+            STATE_SETS[mask] = customStateSet;
+
+            int[] pressedStateSet = new int[customStateSet.length + 1];
+            System.arraycopy(customStateSet, 0, pressedStateSet, 0,
+                    customStateSet.length);
+            pressedStateSet[customStateSet.length] = android.R.attr.state_pressed;
+            STATE_SETS[mask | PRESSED_MASK] = pressedStateSet;
+        }
+    }
+
+    private CaldroidGridAdapter adapter;
+    private OnCellClickListener onCellClickListener;
+
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Rect cellRect = new Rect();
+    private CellStyle cellStyle;
+    private Drawable cellBackground;
+    private ColorStateList cellTextColors;
+    private int cellPadding;
+    private int cellWidth;
+    private int cellHeight;
+    private int horizontalSpacing;
+    private int verticalSpacing;
+    private int rowCount;
+    private int pressedPosition = -1;
+    private boolean measureSingleRow = true;
+    private boolean attachedToWindow;
+
+    private final GestureDetector gestureDetector;
+    private final CellAccessibilityHelper accessibilityHelper;
+
+    private final DataSetObserver dataSetObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            onAdapterChanged();
+        }
+
+        @Override
+        public void onInvalidated() {
+            onAdapterChanged();
+        }
+    };
+
+    public MonthView(Context context) {
+        this(context, null);
+    }
+
+    public MonthView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public MonthView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+
+        TypedArray typedArray = context.obtainStyledAttributes(attrs,
+                R.styleable.MonthView, defStyle, 0);
+        horizontalSpacing = typedArray.getDimensionPixelSize(
+                R.styleable.MonthView_android_horizontalSpacing, 0);
+        verticalSpacing = typedArray.getDimensionPixelSize(
+                R.styleable.MonthView_android_verticalSpacing, 0);
+        typedArray.recycle();
+
+        textPaint.setTextAlign(Paint.Align.CENTER);
+
+        gestureDetector = new GestureDetector(context, new CellGestureListener());
+
+        accessibilityHelper = new CellAccessibilityHelper(this);
+        ViewCompat.setAccessibilityDelegate(this, accessibilityHelper);
+    }
+
+    public CaldroidGridAdapter getAdapter() {
+        return adapter;
+    }
+
+    /**
+     * Set adapter that provides dates and cell states. Cell style is
+     * resolved from the theme of this view, based on the type of cell of the
+     * adapter
+     *
+     * @param adapter
+     */
+    public void setAdapter(CaldroidGridAdapter adapter) {
+        // Observer is only registered while attached, so that detached
+        // views do not leak
+        if (this.adapter != null && attachedToWindow) {
+            this.adapter.unregisterDataSetObserver(dataSetObserver);
+        }
+
+        this.adapter = adapter;
+
+        if (adapter != null) {
+            if (attachedToWindow) {
+                adapter.registerDataSetObserver(dataSetObserver);
+            }
+            resolveCellStyle();
+        }
+
+        onAdapterChanged();
+    }
+
+    public boolean isMeasureSingleRow() {
+        return measureSingleRow;
+    }
+
+    /**
+     * Set whether an unspecified height is measured as a single row, like
+     * GridView, or as all the rows of the month
+     *
+     * @param measureSingleRow
+     */
+    public void setMeasureSingleRow(boolean measureSingleRow) {
+        if (this.measureSingleRow != measureSingleRow) {
+            this.measureSingleRow = measureSingleRow;
+            requestLayout();
+        }
+    }
+
+    public OnCellClickListener getOnCellClickListener() {
+        return onCellClickListener;
+    }
+
+    public void setOnCellClickListener(OnCellClickListener onCellClickListener) {
+        this.onCellClickListener = onCellClickListener;
+    }
+
+    /**
+     * Read background, text color, text size and padding of the cell style in
+     * the theme
+     */
+    private void resolveCellStyle() {
+        // Style is resolved once per theme and shared with the adapter
+        cellStyle = adapter.getCellStyle();
+        textPaint.setTextSize(cellStyle.getTextSize());
+        textPaint.setTypeface(Typeface.defaultFromStyle(cellStyle.getTextStyle()));
+        cellPadding = cellStyle.getPadding();
+
+        // Background is only drawn on the canvas, it can be shared
+        cellBackground = adapter.defaultCellBackgroundRes == -1 ? null
+                : ResourceCache.getDrawable(getResources(),
+                adapter.defaultCellBackgroundRes);
+        cellTextColors = adapter.defaultTextColorRes;
+    }
+
+    private void onAdapterChanged() {
+        pressedPosition = -1;
+
+        // Theme of the adapter changed, text size can change the height
+        if (adapter != null && adapter.getCellStyle() != cellStyle) {
+            resolveCellStyle();
+            requestLayout();
+        }
+
+        int rows = adapter == null ? 0 : adapter.getMonthPage().getRowCount();
+        if (rows != rowCount) {
+            rowCount = rows;
+            requestLayout();
+        }
+        invalidate();
+
+        // Dates and states of the cells may have changed
+        accessibilityHelper.invalidateRoot();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        attachedToWindow = true;
+        if (adapter != null) {
+            adapter.registerDataSetObserver(dataSetObserver);
+            onAdapterChanged();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        attachedToWindow = false;
+        if (adapter != null) {
+            adapter.unregisterDataSetObserver(dataSetObserver);
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        cellWidth = (width - getPaddingLeft() - getPaddingRight()
+                - horizontalSpacing * (COLUMNS - 1)) / COLUMNS;
+
+        if (adapter != null && adapter.squareTextViewCell) {
+            cellHeight = cellWidth;
+        } else {
+            Paint.FontMetricsInt fontMetrics = textPaint.getFontMetricsInt();
+            cellHeight = fontMetrics.bottom - fontMetrics.top + cellPadding * 2;
+        }
+
+        int verticalPadding = getPaddingTop() + getPaddingBottom();
+        int height;
+        switch (MeasureSpec.getMode(heightMeasureSpec)) {
+            case MeasureSpec.UNSPECIFIED:
+                // Same as GridView, report the height of one row
+                height = (measureSingleRow ? cellHeight : getContentHeight())
+                        + verticalPadding;
+                break;
+            case MeasureSpec.AT_MOST:
+                height = Math.min(MeasureSpec.getSize(heightMeasureSpec),
+                        getContentHeight() + verticalPadding);
+                break;
+            default:
+                height = MeasureSpec.getSize(heightMeasureSpec);
+                break;
+        }
+
+        setMeasuredDimension(width, height);
+    }
+
+    private int getContentHeight() {
+        if (rowCount == 0) {
+            return 0;
+        }
+        return cellHeight * rowCount + verticalSpacing * (rowCount - 1);
+    }
+
+    /**
+     * Set bounds of the cell at position to cellRect
+     */
+    private void getCellRect(int position, Rect rect) {
+        int column = position % COLUMNS;
+        int row = position / COLUMNS;
+        int left = getPaddingLeft() + column * (cellWidth + horizontalSpacing);
+        int top = getPaddingTop() + row * (cellHeight + verticalSpacing);
+        rect.set(left, top, left + cellWidth, top + cellHeight);
+    }
+
+    /**
+     * Get position of the cell at x, y
+     *
+     * @return position, or -1 if there is no cell at x, y
+     */
+    public int getPositionAt(float x, float y) {
+        if (adapter == null || cellWidth <= 0 || cellHeight <= 0) {
+            return -1;
+        }
+
+        int left = (int) x - getPaddingLeft();
+        int top = (int) y - getPaddingTop();
+        if (left < 0 || top < 0) {
+            return -1;
+        }
+
+        int column = left / (cellWidth + horizontalSpacing);
+        int row = top / (cellHeight + verticalSpacing);
+
+        // Touch on spacing between cells
+        if (left % (cellWidth + horizontalSpacing) >= cellWidth
+                || top % (cellHeight + verticalSpacing) >= cellHeight) {
+            return -1;
+        }
+
+        int position = row * COLUMNS + column;
+        if (column >= COLUMNS || position >= adapter.getCount()) {
+            return -1;
+        }
+        return position;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        if (adapter == null) {
+            return;
+        }
+
+        MonthPage monthPage = adapter.getMonthPage();
+        Paint.FontMetricsInt fontMetrics = textPaint.getFontMetricsInt();
+        int textOffset = -(fontMetrics.ascent + fontMetrics.descent) / 2;
+        int defaultTextColor = cellTextColors == null ? textPaint.getColor()
+                : cellTextColors.getDefaultColor();
+
+        for (int position = 0; position < monthPage.size(); position++) {
+            getCellRect(position, cellRect);
+
+            int cellState = adapter.getCellState(position);
+            int[] stateSet = STATE_SETS[getCustomStateMask(cellState)
+                    | (position == pressedPosition ? PRESSED_MASK : 0)];
+
+            Drawable background = cellBackground;
+            int textColor = cellTextColors == null ? defaultTextColor
+                    : cellTextColors.getColorForState(stateSet, defaultTextColor);
+
+            // Custom background and text color of the date
+            if ((cellState & CaldroidGridAdapter.CELL_DECORATED) != 0) {
+                CellDecorations decorations = adapter.getCellDecorations();
+
+                Drawable drawable = decorations.getBackground(position);
+                if (drawable != null) {
+                    background = drawable;
+                } else if (decorations.getBackgroundResource(position) != 0) {
+                    // Drawn on the canvas, shared by all cells of the style
+                    background = ResourceCache.getDrawable(getResources(),
+                            decorations.getBackgroundResource(position));
+                }
+
+                if (decorations.hasTextColor(position)) {
+                    textColor = decorations.getTextColor(position);
+                }
+            }
+
+            if (background != null) {
+                background.setState(stateSet);
+                background.setBounds(cellRect);
+                background.draw(canvas);
+            }
+
+            textPaint.setColor(textColor);
+            canvas.drawText(DAY_STRINGS[monthPage.getDay(position)],
+                    cellRect.centerX(), cellRect.centerY() + textOffset,
+                    textPaint);
+        }
+    }
+
+    /**
+     * Convert CaldroidGridAdapter.CELL_* flags to CellView custom state mask
+     */
+    private static int getCustomStateMask(int cellState) {
+        int mask = 0;
+        if ((cellState & CaldroidGridAdapter.CELL_TODAY) != 0) {
+            mask |= CellView.getCustomStateMask(CellView.STATE_TODAY);
+        }
+        if ((cellState & CaldroidGridAdapter.CELL_PREV_NEXT_MONTH) != 0) {
+            mask |= CellView.getCustomStateMask(CellView.STATE_PREV_NEXT_MONTH);
+        }
+        if ((cellState & (CaldroidGridAdapter.CELL_DISABLED
+                | CaldroidGridAdapter.CELL_OUT_OF_RANGE)) != 0) {
+            mask |= CellView.getCustomStateMask(CellView.STATE_DISABLED);
+        }
+        if ((cellState & CaldroidGridAdapter.CELL_SELECTED) != 0) {
+            mask |= CellView.getCustomStateMask(CellView.STATE_SELECTED);
+        }
+        return mask;
+    }
+
+    @Override
+    public boolean dispatchHoverEvent(MotionEvent event) {
+        // Touch exploration of the cells
+        return accessibilityHelper.dispatchHoverEvent(event)
+                || super.dispatchHoverEvent(event);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = gestureDetector.onTouchEvent(event);
+
+        int action = event.getAction() & MotionEvent.ACTION_MASK;
+        if (action == MotionEvent.ACTION_UP
+                || action == MotionEvent.ACTION_CANCEL) {
+            setPressedPosition(-1);
+        }
+
+        return handled || super.onTouchEvent(event);
+    }
+
+    private void setPressedPosition(int position) {
+        if (pressedPosition != position) {
+            pressedPosition = position;
+            invalidate();
+        }
+    }
+
+    private class CellGestureListener extends GestureDetector.SimpleOnGestureListener {
+        @Override
+        public boolean onDown(MotionEvent e) {
+            setPressedPosition(getPositionAt(e.getX(), e.getY()));
+            return pressedPosition != -1;
+        }
+
+        @Override
+        public boolean onSingleTapUp(MotionEvent e) {
+            int position = getPositionAt(e.getX(), e.getY());
+            if (position != -1 && onCellClickListener != null) {
+                playSoundEffect(android.view.SoundEffectConstants.CLICK);
+                performCellClick(position);
+            }
+            return true;
+        }
+
+        @Override
+        public void onLongPress(MotionEvent e) {
+            int position = getPositionAt(e.getX(), e.getY());
+            if (position != -1 && performCellLongClick(position)) {
+                performHapticFeedback(android.view.HapticFeedbackConstants.LONG_PRESS);
+            }
+            setPressedPosition(-1);
+        }
+    }
+
+    /**
+     * Inform the listener of a click on the cell, from touch or from an
+     * accessibility service
+     *
+     * @param position
+     * @return true if there is a listener
+     */
+    private boolean performCellClick(int position) {
+        accessibilityHelper.sendEventForVirtualView(position,
+                AccessibilityEvent.TYPE_VIEW_CLICKED);
+        if (onCellClickListener == null) {
+            return false;
+        }
+        onCellClickListener.onCellClick(this, position);
+        return true;
+    }
+
+    private boolean performCellLongClick(int position) {
+        if (onCellClickListener == null
+                || !onCellClickListener.onCellLongClick(this, position)) {
+            return false;
+        }
+        accessibilityHelper.sendEventForVirtualView(position,
+                AccessibilityEvent.TYPE_VIEW_LONG_CLICKED);
+        return true;
+    }
+
+    private boolean isValidPosition(int position) {
+        return adapter != null && position >= 0 && position < adapter.getCount();
+    }
+
+    /**
+     * Spoken description of the cell, the full date
+     *
+     * @param position
+     * @return
+     */
+    private String getCellDescription(int position) {
+        long millis = CalendarHelper.convertEpochDayToDate(
+                adapter.getEpochDay(position)).getTime();
+        return DateUtils.formatDateTime(getContext(), millis,
+                DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_WEEKDAY
+                        | DateUtils.FORMAT_SHOW_YEAR);
+    }
+
+    /**
+     * Exposes the cells as virtual views, identified by their position, so
+     * screen readers can explore and click them like the cells of the grid
+     * view
+     */
+    private class CellAccessibilityHelper extends ExploreByTouchHelper {
+
+        private final Rect nodeRect = new Rect();
+
+        CellAccessibilityHelper(View view) {
+            super(view);
+        }
+
+        @Override
+        protected int getVirtualViewAt(float x, float y) {
+            int position = getPositionAt(x, y);
+            return position == -1 ? INVALID_ID : position;
+        }
+
+        @Override
+        protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+            if (adapter == null) {
+                return;
+            }
+            for (int position = 0; position < adapter.getCount(); position++) {
+                virtualViewIds.add(position);
+            }
+        }
+
+        @Override
+        protected void onPopulateEventForVirtualView(int virtualViewId,
+                                                     AccessibilityEvent event) {
+            if (!isValidPosition(virtualViewId)) {
+                event.setContentDescription("");
+                return;
+            }
+            event.setContentDescription(getCellDescription(virtualViewId));
+            event.setEnabled(!isCellDisabled(virtualViewId));
+        }
+
+        @Override
+        protected void onPopulateNodeForVirtualView(int virtualViewId,
+                                                    AccessibilityNodeInfoCompat node) {
+            // Adapter changed since the id was given, the cell is gone
+            if (!isValidPosition(virtualViewId)) {
+                nodeRect.setEmpty();
+                node.setContentDescription("");
+                node.setBoundsInParent(nodeRect);
+                node.setVisibleToUser(false);
+                return;
+            }
+
+            int cellState = adapter.getCellState(virtualViewId);
+            node.setContentDescription(getCellDescription(virtualViewId));
+            node.setText(DAY_STRINGS[adapter.getMonthPage().getDay(virtualViewId)]);
+            getCellRect(virtualViewId, nodeRect);
+            node.setBoundsInParent(nodeRect);
+            node.setSelected((cellState & CaldroidGridAdapter.CELL_SELECTED) != 0);
+            node.setEnabled(!isCellDisabled(virtualViewId));
+            node.setClickable(true);
+            node.setLongClickable(true);
+            node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+            node.addAction(AccessibilityNodeInfoCompat.ACTION_LONG_CLICK);
+        }
+
+        @Override
+        protected boolean onPerformActionForVirtualView(int virtualViewId,
+                                                        int action, Bundle arguments) {
+            if (!isValidPosition(virtualViewId)) {
+                return false;
+            }
+            switch (action) {
+                case AccessibilityNodeInfoCompat.ACTION_CLICK:
+                    return performCellClick(virtualViewId);
+                case AccessibilityNodeInfoCompat.ACTION_LONG_CLICK:
+                    return performCellLongClick(virtualViewId);
+                default:
+                    return false;
+            }
+        }
+
+        private boolean isCellDisabled(int position) {
+            return (adapter.getCellState(position)
+                    & (CaldroidGridAdapter.CELL_DISABLED
+                    | CaldroidGridAdapter.CELL_OUT_OF_RANGE)) != 0;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.roomorama.caldroid;
+
+import android.support.v4.view.PagerAdapter;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/**
+ * MonthViewPagerAdapter provides the same 4 pages as MonthPagerAdapter, but
+ * adds the page views of the DateGridFragments directly to the pager instead
+ * of attaching the fragments. This avoids fragment transactions and the child
+ * FragmentManager. The fragments are never attached, they only create and
+ * keep their page view, so getFragments() users can still access the grid
+ * views and adapters.
+ */
+public class MonthViewPagerAdapter extends PagerAdapter {
+
+    private ArrayList<DateGridFragment> fragments;
+
+    // Lazily create the fragments
+    public ArrayList<DateGridFragment> getFragments() {
+        if (fragments == null) {
+            fragments = new ArrayList<DateGridFragment>();
+            for (int i = 0; i < getCount(); i++) {
+                fragments.add(new DateGridFragment());
+            }
+        }
+        return fragments;
+    }
+
+    public void setFragments(ArrayList<DateGridFragment> fragments) {
+        this.fragments = fragments;
+    }
+
+    @Override
+    public Object instantiateItem(ViewGroup container, int position) {
+        // Page view is created once by the fragment and reused afterwards
+        View view = getFragments().get(position).createPageView(
+                container.getContext(),
+                LayoutInflater.from(container.getContext()), container);
+        container.addView(view);
+        return view;
+    }
+
+    @Override
+    public void destroyItem(ViewGroup container, int position, Object object) {
+        container.removeView((View) object);
+    }
+
+    @Override
+    public boolean isViewFromObject(View view, Object object) {
+        return view == object;
+    }
+
+    @Override
+    public int getCount() {
+        // Same as MonthPagerAdapter, 4 pages for previous month, current
+        // month, next month and 1 extra page for recycle
+        return CaldroidFragment.NUMBER_OF_PAGES;
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.roomorama.caldroid;
+
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+/**
+ * ResourceCache resolves the color and drawable resources used to draw the
+ * cells once, so binding a cell does not go through Resources again. Like
+ * CellStyle, it is shared by the whole process and cleared when the
+ * configuration changes, because resources can depend on resource
+ * qualifiers.
+ */
+public final class ResourceCache {
+
+    private static final SparseIntArray colors = new SparseIntArray();
+    private static final SparseArray<Drawable> drawables = new SparseArray<Drawable>();
+
+    /**
+     * Configuration the cached resources were resolved with
+     */
+    private static Configuration cacheConfiguration;
+
+    private ResourceCache() {
+    }
+
+    /**
+     * Get a color, resolved on first call
+     *
+     * @param resources
+     * @param colorResource
+     * @return the color as ARGB
+     */
+    public static synchronized int getColor(Resources resources, int colorResource) {
+        checkConfiguration(resources);
+
+        int index = colors.indexOfKey(colorResource);
+        if (index >= 0) {
+            return colors.valueAt(index);
+        }
+
+        int color = resources.getColor(colorResource);
+        colors.put(colorResource, color);
+        return color;
+    }
+
+    /**
+     * Get a mutated drawable, created on first call. The drawable is shared
+     * by all callers, so it must only be drawn on a Canvas after setting its
+     * state and bounds, never set as the background of a view
+     *
+     * @param resources
+     * @param drawableResource
+     * @return
+     */
+    public static synchronized Drawable getDrawable(Resources resources, int drawableResource) {
+        checkConfiguration(resources);
+
+        Drawable drawable = drawables.get(drawableResource);
+        if (drawable == null) {
+            drawable = resources.getDrawable(drawableResource).mutate();
+            drawables.put(drawableResource, drawable);
+        }
+        return drawable;
+    }
+
+    /**
+     * Forget all the resolved resources. CaldroidFragment calls it when the
+     * configuration changes
+     */
+    public static synchronized void clearCache() {
+        colors.clear();
+        drawables.clear();
+        cacheConfiguration = null;
+    }
+
+    private static void checkConfiguration(Resources resources) {
+        Configuration configuration = resources.getConfiguration();
+        if (cacheConfiguration == null || !cacheConfiguration.equals(configuration)) {
+            colors.clear();
+            drawables.clear();
+            cacheConfiguration = new Configuration(configuration);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.roomorama.caldroid;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * RetainedCaldroidStates keeps the data of the calendars whose states were
+ * saved, in memory, so the calendar restored after a configuration change
+ * adopts the snapshot directly instead of parsing the dates back from the
+ * bundle and rebuilding it. Only the views are created again.
+ * <p/>
+ * Each saved state gets a random token, stored in the bundle. A state can be
+ * taken only once. The state of a fragment is kept as long as the fragment
+ * is alive, whatever the number of calendars. Once the fragment is
+ * destroyed to be recreated, its state waits to be taken, and only the last
+ * MAX_ORPHANED_STATES states waiting are kept. When the process is killed
+ * the states are lost, and the calendar falls back to the dates saved in
+ * the bundle.
+ * <p/>
+ * States are kept in static maps, so they must not refer to an activity:
+ * the decoration provider and the background drawables, whose callbacks
+ * refer to views, are not kept. A fragment discards its state when it is
+ * removed or its activity finishes.
+ */
+final class RetainedCaldroidStates {
+
+    /**
+     * Maximum number of states kept after their fragment is destroyed
+     */
+    static final int MAX_ORPHANED_STATES = 16;
+
+    private static final Random random = new Random();
+
+    /**
+     * States of fragments still alive, never dropped
+     */
+    private static final Map<Long, CaldroidData> states = new HashMap<Long, CaldroidData>();
+
+    /**
+     * States of destroyed fragments, waiting for the recreated fragment
+     */
+    private static final Map<Long, CaldroidData> orphanedStates = new LinkedHashMap<Long, CaldroidData>(
+            MAX_ORPHANED_STATES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CaldroidData> eldest) {
+            return size() > MAX_ORPHANED_STATES;
+        }
+    };
+
+    private RetainedCaldroidStates() {
+    }
+
+    /**
+     * Keep data until it is taken or discarded
+     *
+     * @param data snapshot, must not refer to an activity
+     * @return token to take the data back, never 0
+     */
+    static long put(CaldroidData data) {
+        synchronized (states) {
+            long token;
+            do {
+                token = random.nextLong();
+            } while (token == 0 || states.containsKey(token)
+                    || orphanedStates.containsKey(token));
+
+            states.put(token, data);
+            return token;
+        }
+    }
+
+    /**
+     * Take data kept by {@link #put(CaldroidData)}
+     *
+     * @param token
+     * @return the data, or null if it was already taken or dropped
+     */
+    static CaldroidData take(long token) {
+        synchronized (states) {
+            CaldroidData data = states.remove(token);
+            return data != null ? data : orphanedStates.remove(token);
+        }
+    }
+
+    /**
+     * Called when the fragment that kept the data is destroyed but will be
+     * recreated. The data may be dropped if too many states are waiting
+     *
+     * @param token
+     */
+    static void orphan(long token) {
+        synchronized (states) {
+            CaldroidData data = states.remove(token);
+            if (data != null) {
+                orphanedStates.put(token, data);
+            }
+        }
+    }
+
+    /**
+     * Drop data that will not be taken
+     *
+     * @param token
+     */
+    static void discard(long token) {
+        take(token);
+    }
+}
@@ -0,0 +1,164 @@
+package com.roomorama.caldroid;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.util.SparseArray;
+import android.util.TypedValue;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.TextView;
+
+import com.caldroid.R;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * ThemeCache keeps the themed inflaters of Caldroid, so the pages, adapters
+ * and weekday views of a calendar share one ContextThemeWrapper per theme
+ * instead of creating one each.
+ * <p/>
+ * Inflaters are cached per original inflater, context and theme. The cache
+ * only holds weak references: the views and adapters using an inflater keep
+ * it alive, so no activity is leaked.
+ * <p/>
+ * ThemeCache also applies the styles of a theme to views already created,
+ * which lets CaldroidFragment switch theme without inflating views again.
+ */
+final class ThemeCache {
+
+    private static final Map<LayoutInflater, SparseArray<WeakReference<LayoutInflater>>> cache =
+            new WeakHashMap<LayoutInflater, SparseArray<WeakReference<LayoutInflater>>>();
+
+    private ThemeCache() {
+    }
+
+    /**
+     * Get a copy of origInflater that inflates views with themeResource
+     *
+     * @param context       context to apply the theme on
+     * @param origInflater
+     * @param themeResource
+     * @return
+     */
+    static LayoutInflater getInflater(Context context, LayoutInflater origInflater,
+                                      int themeResource) {
+        synchronized (cache) {
+            SparseArray<WeakReference<LayoutInflater>> inflaters = cache.get(origInflater);
+            if (inflaters == null) {
+                inflaters = new SparseArray<WeakReference<LayoutInflater>>();
+                cache.put(origInflater, inflaters);
+            }
+
+            WeakReference<LayoutInflater> reference = inflaters.get(themeResource);
+            LayoutInflater inflater = reference == null ? null : reference.get();
+            if (inflater == null || ((ContextThemeWrapper) inflater.getContext())
+                    .getBaseContext() != context) {
+                Context wrapped = new ContextThemeWrapper(context, themeResource);
+                inflater = origInflater.cloneInContext(wrapped);
+                inflaters.put(themeResource, new WeakReference<LayoutInflater>(inflater));
+            }
+            return inflater;
+        }
+    }
+
+    /**
+     * Get context with themeResource applied on top of the theme of context
+     *
+     * @param context
+     * @param themeResource
+     * @return
+     */
+    static Context getContext(Context context, int themeResource) {
+        return getInflater(context, LayoutInflater.from(context), themeResource)
+                .getContext();
+    }
+
+    /**
+     * Forget all the inflaters. CaldroidFragment calls it when the
+     * configuration changes
+     */
+    static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Apply background, padding, text color and text size of a style of the
+     * theme to a view created with another theme. Attributes the style does
+     * not declare are left unchanged
+     *
+     * @param view
+     * @param themeResource Caldroid theme
+     * @param styleAttr     attribute of the style in the theme, e.g.
+     *                      R.attr.styleCaldroidMonthName
+     */
+    static void applyStyle(View view, int themeResource, int styleAttr) {
+        if (view == null) {
+            return;
+        }
+
+        Context themedContext = getContext(view.getContext(), themeResource);
+        TypedValue styleValue = new TypedValue();
+        if (!themedContext.getTheme().resolveAttribute(styleAttr, styleValue, true)) {
+            return;
+        }
+
+        TypedArray typedArray = themedContext.obtainStyledAttributes(styleValue.data,
+                R.styleable.ThemedView);
+
+        // Background can reset the padding, read it first
+        int left = view.getPaddingLeft();
+        int top = view.getPaddingTop();
+        int right = view.getPaddingRight();
+        int bottom = view.getPaddingBottom();
+
+        if (typedArray.hasValue(R.styleable.ThemedView_android_background)) {
+            int backgroundRes = typedArray.getResourceId(
+                    R.styleable.ThemedView_android_background, 0);
+            if (backgroundRes != 0) {
+                view.setBackgroundResource(backgroundRes);
+            } else {
+                view.setBackgroundColor(typedArray.getColor(
+                        R.styleable.ThemedView_android_background, 0));
+            }
+        }
+
+        if (typedArray.hasValue(R.styleable.ThemedView_android_padding)) {
+            int padding = typedArray.getDimensionPixelSize(
+                    R.styleable.ThemedView_android_padding, 0);
+            left = top = right = bottom = padding;
+        }
+        left = typedArray.getDimensionPixelSize(
+                R.styleable.ThemedView_android_paddingLeft, left);
+        top = typedArray.getDimensionPixelSize(
+                R.styleable.ThemedView_android_paddingTop, top);
+        right = typedArray.getDimensionPixelSize(
+                R.styleable.ThemedView_android_paddingRight, right);
+        bottom = typedArray.getDimensionPixelSize(
+                R.styleable.ThemedView_android_paddingBottom, bottom);
+        view.setPadding(left, top, right, bottom);
+
+        if (view instanceof TextView) {
+            TextView textView = (TextView) view;
+
+            ColorStateList textColors = typedArray.getColorStateList(
+                    R.styleable.ThemedView_android_textColor);
+            if (textColors != null) {
+                textView.setTextColor(textColors);
+            }
+
+            if (typedArray.hasValue(R.styleable.ThemedView_android_textSize)) {
+                textView.setTextSize(TypedValue.COMPLEX_UNIT_PX,
+                        typedArray.getDimensionPixelSize(
+                                R.styleable.ThemedView_android_textSize, 0));
+            }
+        }
+
+        typedArray.recycle();
+    }
+}
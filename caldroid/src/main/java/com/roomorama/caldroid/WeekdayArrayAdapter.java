@@ -2,7 +2,6 @@ package com.roomorama.caldroid;
 
 import android.content.Context;
 import android.graphics.Color;
-import android.view.ContextThemeWrapper;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -19,13 +18,34 @@ import java.util.List;
  */
 public class WeekdayArrayAdapter extends ArrayAdapter<String> {
     LayoutInflater localInflater;
+    private int themeResource;
 
     public WeekdayArrayAdapter(Context context, int textViewResourceId,
                                List<String> objects, int themeResource) {
         super(context, textViewResourceId, objects);
+        this.themeResource = themeResource;
         localInflater = getLayoutInflater(getContext(), themeResource);
     }
 
+    /**
+     * Switch theme. Weekday views already created are restyled when they
+     * are bound again
+     *
+     * @param themeResource
+     */
+    public void setThemeResource(int themeResource) {
+        if (this.themeResource == themeResource) {
+            return;
+        }
+        this.themeResource = themeResource;
+        localInflater = getLayoutInflater(getContext(), themeResource);
+        notifyDataSetChanged();
+    }
+
+    public int getThemeResource() {
+        return themeResource;
+    }
+
     // To prevent cell highlighted when clicked
     @Override
     public boolean areAllItemsEnabled() {
@@ -40,7 +60,20 @@ public class WeekdayArrayAdapter extends ArrayAdapter<String> {
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
         // To customize text size and color
-        TextView textView = (TextView) localInflater.inflate(R.layout.weekday_textview, null);
+        TextView textView;
+        if (convertView == null) {
+            textView = (TextView) localInflater.inflate(R.layout.weekday_textview, null);
+            textView.setTag(themeResource);
+        } else {
+            textView = (TextView) convertView;
+
+            // Created with another theme
+            if (!Integer.valueOf(themeResource).equals(textView.getTag())) {
+                ThemeCache.applyStyle(textView, themeResource,
+                        R.attr.styleCaldroidWeekdayView);
+                textView.setTag(themeResource);
+            }
+        }
 
         // Set content
         String item = getItem(position);
@@ -50,9 +83,8 @@ public class WeekdayArrayAdapter extends ArrayAdapter<String> {
     }
 
     private LayoutInflater getLayoutInflater(Context context, int themeResource) {
-        Context wrapped = new ContextThemeWrapper(context, themeResource);
         LayoutInflater inflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-        return inflater.cloneInContext(wrapped);
+        return CaldroidFragment.getThemeInflater(context, inflater, themeResource);
     }
 
 }
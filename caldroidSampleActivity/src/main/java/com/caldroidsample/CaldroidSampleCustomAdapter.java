@@ -13,8 +13,6 @@ import com.roomorama.caldroid.CaldroidGridAdapter;
 
 import java.util.Map;
 
-import hirondelle.date4j.DateTime;
-
 public class CaldroidSampleCustomAdapter extends CaldroidGridAdapter {
 
 	public CaldroidSampleCustomAdapter(Context context, int month, int year,
@@ -44,12 +42,13 @@ public class CaldroidSampleCustomAdapter extends CaldroidGridAdapter {
 
 		tv1.setTextColor(Color.BLACK);
 
-		// Get dateTime of this cell
-		DateTime dateTime = this.datetimeList.get(position);
+		// Get state of this cell
+		int cellState = getCellState(position);
+		boolean isToday = (cellState & CELL_TODAY) != 0;
 		Resources resources = context.getResources();
 
 		// Set color of the dates in previous / next month
-		if (dateTime.getMonth() != month) {
+		if ((cellState & CELL_PREV_NEXT_MONTH) != 0) {
 			tv1.setTextColor(resources
 					.getColor(com.caldroid.R.color.caldroid_darker_gray));
 		}
@@ -58,9 +57,7 @@ public class CaldroidSampleCustomAdapter extends CaldroidGridAdapter {
 		boolean shouldResetSelectedView = false;
 
 		// Customize for disabled dates and date outside min/max dates
-		if ((minDateTime != null && dateTime.lt(minDateTime))
-				|| (maxDateTime != null && dateTime.gt(maxDateTime))
-				|| (disableDates != null && disableDates.indexOf(dateTime) != -1)) {
+		if (isCellDisabled(position)) {
 
 			tv1.setTextColor(CaldroidFragment.disabledTextColor);
 			if (CaldroidFragment.disabledBackgroundDrawable == -1) {
@@ -69,7 +66,7 @@ public class CaldroidSampleCustomAdapter extends CaldroidGridAdapter {
 				cellView.setBackgroundResource(CaldroidFragment.disabledBackgroundDrawable);
 			}
 
-			if (dateTime.equals(getToday())) {
+			if (isToday) {
 				cellView.setBackgroundResource(com.caldroid.R.drawable.red_border_gray_bg);
 			}
 
@@ -78,7 +75,7 @@ public class CaldroidSampleCustomAdapter extends CaldroidGridAdapter {
 		}
 
 		// Customize for selected dates
-		if (selectedDates != null && selectedDates.indexOf(dateTime) != -1) {
+		if ((cellState & CELL_SELECTED) != 0) {
 			cellView.setBackgroundColor(resources
 					.getColor(com.caldroid.R.color.caldroid_sky_blue));
 
@@ -90,14 +87,14 @@ public class CaldroidSampleCustomAdapter extends CaldroidGridAdapter {
 
 		if (shouldResetDiabledView && shouldResetSelectedView) {
 			// Customize for today
-			if (dateTime.equals(getToday())) {
+			if (isToday) {
 				cellView.setBackgroundResource(com.caldroid.R.drawable.red_border);
 			} else {
 				cellView.setBackgroundResource(com.caldroid.R.drawable.cell_bg);
 			}
 		}
 
-		tv1.setText("" + dateTime.getDay());
+		tv1.setText("" + monthPage.getDay(position));
 		tv2.setText("Hi");
 
 		// Somehow after setBackgroundResource, the padding collapse.
@@ -106,7 +103,9 @@ public class CaldroidSampleCustomAdapter extends CaldroidGridAdapter {
 				bottomPadding);
 
 		// Set custom color if required
-		setCustomResources(dateTime, cellView, tv1);
+		if ((cellState & CELL_DECORATED) != 0) {
+			setCustomResources(position, cellView, tv1);
+		}
 
 		return cellView;
 	}